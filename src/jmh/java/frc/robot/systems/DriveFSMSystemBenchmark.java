@@ -0,0 +1,69 @@
+package frc.robot.systems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.TeleopInput;
+
+/**
+ * Benchmark for one teleop update of DriveFSMSystem against the simulated
+ * Phoenix drivetrain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DriveFSMSystemBenchmark {
+	private DriveFSMSystem drive;
+	private TeleopInput input;
+
+	/**
+	 * TeleopInput that always reports the same stick positions.
+	 */
+	private static final class StubTeleopInput extends TeleopInput {
+		@Override
+		public double getDriveLeftJoystickX() {
+			return 0.3;
+		}
+
+		@Override
+		public double getDriveLeftJoystickY() {
+			return -0.5;
+		}
+
+		@Override
+		public double getDriveRightJoystickX() {
+			return 0.2;
+		}
+
+		@Override
+		public double getDriveRightJoystickY() {
+			return 0.0;
+		}
+	}
+
+	/**
+	 * Builds the drivetrain and stub input.
+	 */
+	@Setup
+	public void setup() {
+		HAL.initialize(500, 0);
+		drive = new DriveFSMSystem();
+		input = new StubTeleopInput();
+	}
+
+	/**
+	 * One teleop update.
+	 */
+	@Benchmark
+	public void update() {
+		drive.update(input);
+	}
+}
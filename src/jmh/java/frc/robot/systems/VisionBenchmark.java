@@ -0,0 +1,93 @@
+package frc.robot.systems;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.systems.VisionIO.PoseObservation;
+import frc.robot.systems.VisionIO.PoseObservationType;
+
+/**
+ * Benchmarks for Vision.periodic and the rejection and standard deviation math,
+ * using two cameras that each report five observations per cycle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisionBenchmark {
+	private static final int OBSERVATIONS_PER_CAMERA = 5;
+	private static final int[] TAG_IDS = {17, 18, 19};
+
+	private Vision vision;
+	private VisionFilterChain filters;
+	private PoseObservation observation;
+
+	/**
+	 * Builds a Vision subsystem with two stub cameras.
+	 */
+	@Setup
+	public void setup() {
+		HAL.initialize(500, 0);
+
+		PoseObservation[] observations = new PoseObservation[OBSERVATIONS_PER_CAMERA];
+		for (int i = 0; i < observations.length; i++) {
+			observations[i] = new PoseObservation(
+				i * 0.02,
+				new Pose3d(3.0 + 0.1 * i, 4.0, 0.0, new Rotation3d(0.0, 0.0, 0.1 * i)),
+				0.05,
+				1 + i % 3,
+				2.0,
+				PoseObservationType.PHOTONVISION);
+		}
+
+		VisionIO io = new VisionIO() {
+			@Override
+			public void updateInputs(VisionIOInputs inputs) {
+				inputs.connected = true;
+				inputs.poseObservations = observations;
+				inputs.tagIds = TAG_IDS;
+			}
+		};
+
+		vision = new Vision((x, y, theta, timestamp, xStdDev, yStdDev, thetaStdDev) -> { },
+			io, io);
+		filters = vision.getFilters();
+		observation = observations[0];
+	}
+
+	/**
+	 * One full vision cycle.
+	 */
+	@Benchmark
+	public void periodic() {
+		vision.periodic();
+	}
+
+	/**
+	 * One observation through the default rejection pipeline.
+	 * @return whether the observation was accepted
+	 */
+	@Benchmark
+	public boolean rejectionChain() {
+		return filters.accept(0, observation);
+	}
+
+	/**
+	 * The standard deviation scale factor for one observation.
+	 * @return the scale factor
+	 */
+	@Benchmark
+	public double stdDevFactor() {
+		return Vision.stdDevFactor(
+			observation.averageTagDistance(), observation.tagCount(), 1);
+	}
+}
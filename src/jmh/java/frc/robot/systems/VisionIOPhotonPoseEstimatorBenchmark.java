@@ -0,0 +1,148 @@
+package frc.robot.systems;
+
+import static frc.robot.Constants.VisionConstants.ROBOT_TO_REEF_CAM;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.photonvision.EstimatedRobotPose;
+import org.photonvision.targeting.MultiTargetPNPResult;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.PnpResult;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.systems.VisionIO.PoseObservation;
+import frc.robot.systems.VisionIO.PoseObservationType;
+
+/**
+ * Benchmark for VisionIOPhotonPoseEstimator.updateInputs fed with synthetic
+ * multi-tag pipeline results, two per cycle. legacyUpdateInputs runs the same
+ * results through the collection code updateInputs used before it stopped
+ * allocating, a HashSet of tag IDs and a LinkedList of observations copied into
+ * new arrays every cycle, so gc.alloc.rate.norm can be compared before and after.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisionIOPhotonPoseEstimatorBenchmark {
+	private static final int RESULTS_PER_CYCLE = 2;
+	private static final int[] TAG_IDS = {17, 18};
+	private static final long LOOP_PERIOD_MICROS = 20_000;
+	private static final long FRAME_PERIOD_MICROS = 10_000;
+
+	private VisionIOPhotonPoseEstimator io;
+	private VisionIOInputsAutoLogged inputs;
+	private List<PhotonPipelineResult> results;
+	private long timestampMicros = 0;
+
+	/**
+	 * Builds a polling camera IO and the synthetic results.
+	 */
+	@Setup
+	public void setup() {
+		HAL.initialize(500, 0);
+		io = new VisionIOPhotonPoseEstimator("benchmark", ROBOT_TO_REEF_CAM, false);
+		inputs = new VisionIOInputsAutoLogged();
+		results = new ArrayList<>();
+		for (int i = 0; i < RESULTS_PER_CYCLE; i++) {
+			results.add(syntheticResult(i));
+		}
+	}
+
+	/**
+	 * One cycle of updateInputs. The receive timestamps advance every call so the
+	 * pose estimator does not treat the results as duplicates.
+	 */
+	@Benchmark
+	public void updateInputs() {
+		timestampMicros += LOOP_PERIOD_MICROS;
+		for (int i = 0; i < results.size(); i++) {
+			results.get(i).setReceiveTimestampMicros(timestampMicros + i * FRAME_PERIOD_MICROS);
+		}
+		io.updateInputs(inputs, results);
+	}
+
+	/**
+	 * One cycle of the allocating collection code updateInputs used to run, copied
+	 * unchanged apart from the result source, on the same pose estimator and
+	 * results as {@link #updateInputs()}.
+	 */
+	@Benchmark
+	public void legacyUpdateInputs() {
+		timestampMicros += LOOP_PERIOD_MICROS;
+		for (int i = 0; i < results.size(); i++) {
+			results.get(i).setReceiveTimestampMicros(timestampMicros + i * FRAME_PERIOD_MICROS);
+		}
+
+		Optional<EstimatedRobotPose> estPose = Optional.empty();
+		Set<Short> tagIds = new HashSet<>();
+		List<PoseObservation> poseObservations = new LinkedList<>();
+		for (var result : results) {
+			estPose = io.getPoseEstimator().update(result);
+
+			if (estPose.isPresent()) {
+				var pose = estPose.get();
+
+				double totalTagDistance = 0;
+				for (var target : pose.targetsUsed) {
+					totalTagDistance += target.bestCameraToTarget.getTranslation().getNorm();
+					tagIds.add((short) target.getFiducialId());
+				}
+				double averageTagDistance = totalTagDistance / pose.targetsUsed.size();
+
+				poseObservations.add(
+					new PoseObservation(
+						result.getTimestampSeconds(),
+						estPose.get().estimatedPose,
+						estPose.get().targetsUsed.get(0).poseAmbiguity,
+						estPose.get().targetsUsed.size(),
+						averageTagDistance,
+						PoseObservationType.PHOTONVISION
+					)
+				);
+			}
+		}
+
+		inputs.poseObservations = new PoseObservation[poseObservations.size()];
+		for (int i = 0; i < poseObservations.size(); i++) {
+			inputs.poseObservations[i] = poseObservations.get(i);
+		}
+
+		inputs.tagIds = new int[tagIds.size()];
+		int i = 0;
+		for (int id : tagIds) {
+			inputs.tagIds[i++]  = id;
+		}
+	}
+
+	private static PhotonPipelineResult syntheticResult(int sequence) {
+		var cameraToTag = new Transform3d(2.0, 0.1, 0.0, new Rotation3d(0.0, 0.0, Math.PI));
+		List<PhotonTrackedTarget> targets = new ArrayList<>();
+		List<Short> fiducialIds = new ArrayList<>();
+		for (int id : TAG_IDS) {
+			targets.add(new PhotonTrackedTarget(
+				0.0, 0.0, 1.0, 0.0, id, -1, -1.0f,
+				cameraToTag, cameraToTag, 0.05, List.of(), List.of()));
+			fiducialIds.add((short) id);
+		}
+
+		var fieldToCamera = new Transform3d(3.0, 4.0, 0.4, new Rotation3d());
+		var multitag = new MultiTargetPNPResult(new PnpResult(fieldToCamera, 0.1), fiducialIds);
+		return new PhotonPipelineResult(sequence, 0, 0, 0, targets, Optional.of(multitag));
+	}
+}
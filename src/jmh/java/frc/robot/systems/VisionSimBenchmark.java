@@ -0,0 +1,83 @@
+package frc.robot.systems;
+
+import static frc.robot.Constants.VisionConstants.REEF_CAMERA_NAME;
+import static frc.robot.Constants.VisionConstants.ROBOT_TO_REEF_CAM;
+import static frc.robot.Constants.VisionConstants.SIM_NOISE_SEED;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+
+/**
+ * Compares one robot loop of camera simulation through VisionIOHeadlessSim with
+ * the PhotonVision VisionSystemSim path used by VisionIOPhotonPoseEstimatorSim.
+ * Both cameras look at the blue reef from the same pose, and the simulated clock
+ * is paused and stepped by one loop per call so each call sees the frames of one
+ * loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VisionSimBenchmark {
+	private static final double LOOP_PERIOD_SECS = 0.02;
+	private static final Pose2d ROBOT_POSE = new Pose2d(2.0, 4.0, Rotation2d.kZero);
+
+	private VisionIOHeadlessSim headless;
+	private VisionIOPhotonPoseEstimatorSim photonSim;
+	private VisionIOInputsAutoLogged inputs;
+
+	/**
+	 * Builds one camera of each kind at a fixed robot pose.
+	 */
+	@Setup
+	public void setup() {
+		HAL.initialize(500, 0);
+		SimHooks.pauseTiming();
+		headless = new VisionIOHeadlessSim(
+			REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM,
+			(timestamp, out) -> {
+				out[0] = ROBOT_POSE.getX();
+				out[1] = ROBOT_POSE.getY();
+				out[2] = ROBOT_POSE.getRotation().getRadians();
+				return true;
+			},
+			SIM_NOISE_SEED);
+		photonSim = new VisionIOPhotonPoseEstimatorSim(
+			REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM, new VisionSimCoordinator(() -> ROBOT_POSE));
+		inputs = new VisionIOInputsAutoLogged();
+	}
+
+	/**
+	 * One loop of the headless analytic camera.
+	 * @return the inputs, so the work is not eliminated
+	 */
+	@Benchmark
+	public VisionIOInputsAutoLogged headlessUpdateInputs() {
+		SimHooks.stepTiming(LOOP_PERIOD_SECS);
+		headless.updateInputs(inputs);
+		return inputs;
+	}
+
+	/**
+	 * One loop of the VisionSystemSim camera, which renders and estimates a pose
+	 * from every frame.
+	 * @return the inputs, so the work is not eliminated
+	 */
+	@Benchmark
+	public VisionIOInputsAutoLogged visionSystemSimUpdateInputs() {
+		SimHooks.stepTiming(LOOP_PERIOD_SECS);
+		photonSim.updateInputs(inputs);
+		return inputs;
+	}
+}
@@ -0,0 +1,62 @@
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.Constants.DriveConstants;
+
+/**
+ * Benchmarks interpolated lookups in a full pose history filled at 250 Hz, with
+ * the ring wrapped so queries cross the physical end of the arrays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoseHistoryBenchmark {
+	private static final double SAMPLE_PERIOD = 0.004;
+	private static final int QUERIES = 64;
+
+	private PoseHistory history;
+	private final double[] queryTimes = new double[QUERIES];
+	private final double[] out = new double[3];
+	private int nextQuery = 0;
+
+	/**
+	 * Fills the history one and a half times over and picks query times spread
+	 * across it.
+	 */
+	@Setup
+	public void setup() {
+		int samples = DriveConstants.POSE_HISTORY_SAMPLES;
+		history = new PoseHistory(samples);
+		for (int i = 0; i < samples * 3 / 2; i++) {
+			double t = i * SAMPLE_PERIOD;
+			history.add(t, Math.cos(t), Math.sin(t), t);
+		}
+
+		double oldest = history.getOldestTimestamp();
+		double span = history.getNewestTimestamp() - oldest;
+		for (int i = 0; i < QUERIES; i++) {
+			// Offset by a fraction of a period so every query interpolates
+			queryTimes[i] = oldest + span * i / QUERIES + SAMPLE_PERIOD / 3;
+		}
+	}
+
+	/**
+	 * One interpolated lookup.
+	 * @return the interpolated X position
+	 */
+	@Benchmark
+	public double poseAt() {
+		history.poseAt(queryTimes[nextQuery], out);
+		nextQuery = (nextQuery + 1) % QUERIES;
+		return out[0];
+	}
+}
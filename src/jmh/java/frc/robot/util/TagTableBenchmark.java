@@ -0,0 +1,109 @@
+package frc.robot.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wpi.first.math.geometry.Pose3d;
+
+/**
+ * Compares the lookups Vision used to make through AprilTagFieldLayout with the
+ * dense TagTable, across every tag on the field: the 3D tag pose, its floor
+ * projection, and the field boundary check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TagTableBenchmark {
+	private static final int REEFSCAPE_TAG_COUNT = 22;
+
+	/**
+	 * Checks that the table covers every Reefscape tag.
+	 */
+	@Setup
+	public void setup() {
+		if (TagTable.TAG_COUNT != REEFSCAPE_TAG_COUNT) {
+			throw new IllegalStateException("Expected " + REEFSCAPE_TAG_COUNT
+				+ " tags, the layout has " + TagTable.TAG_COUNT);
+		}
+	}
+
+	/**
+	 * Looks up every tag with AprilTagFieldLayout.getTagPose.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void layoutLookup(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			blackhole.consume(TagTable.LAYOUT.getTagPose(TagTable.getId(i)));
+		}
+	}
+
+	/**
+	 * Looks up every tag with TagTable.getPose3d.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void tableLookup(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			blackhole.consume(TagTable.getPose3d(TagTable.getId(i)));
+		}
+	}
+
+	/**
+	 * Projects every tag to the floor after looking it up in the layout.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void layoutLookup2d(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			blackhole.consume(
+				TagTable.LAYOUT.getTagPose(TagTable.getId(i)).map(Pose3d::toPose2d));
+		}
+	}
+
+	/**
+	 * Reads every tag's precomputed floor projection with TagTable.getPose2d.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void tableLookup2d(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			blackhole.consume(TagTable.getPose2d(TagTable.getId(i)));
+		}
+	}
+
+	/**
+	 * Checks every tag's position against the field size read from the layout.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void layoutBounds(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			Pose3d pose = TagTable.getPose3d(TagTable.getId(i));
+			blackhole.consume(pose.getX() < 0.0
+				|| pose.getX() > TagTable.LAYOUT.getFieldLength()
+				|| pose.getY() < 0.0
+				|| pose.getY() > TagTable.LAYOUT.getFieldWidth());
+		}
+	}
+
+	/**
+	 * Checks every tag's position with TagTable.isOnField.
+	 * @param blackhole sink for the results
+	 */
+	@Benchmark
+	public void tableBounds(Blackhole blackhole) {
+		for (int i = 0; i < TagTable.TAG_COUNT; i++) {
+			Pose3d pose = TagTable.getPose3d(TagTable.getId(i));
+			blackhole.consume(!TagTable.isOnField(pose.getX(), pose.getY()));
+		}
+	}
+}
@@ -3,28 +3,41 @@ package frc.robot;
 import static edu.wpi.first.units.Units.Second;
 import static edu.wpi.first.units.Units.Volts;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import com.ctre.phoenix6.SignalLogger;
 import com.ctre.phoenix6.Utils;
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
 import com.ctre.phoenix6.swerve.SwerveDrivetrainConstants;
 import com.ctre.phoenix6.swerve.SwerveModuleConstants;
 import com.ctre.phoenix6.swerve.SwerveRequest;
+import com.ctre.phoenix6.swerve.SwerveRequest.ForwardPerspectiveValue;
 
 import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Subsystem;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
 import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.SimConstants;
 import frc.robot.TunerConstants.TunerSwerveDrivetrain;
+import frc.robot.sim.LockstepDriveSim;
+import frc.robot.util.OdometrySampleBuffer;
+import frc.robot.util.VisionMeasurementQueue;
 
 /**
  * Class that extends the Phoenix 6 SwerveDrivetrain class and implements
@@ -35,12 +48,61 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 	private Notifier simNotifier = null;
 	private double lastSimTime;
 
+	/*
+	 * Vision measurements waiting to be applied. The odometry thread wakes the vision
+	 * thread after each sample, and the vision thread adds them to the pose estimator,
+	 * so they are never added from inside Phoenix's telemetry callback.
+	 */
+	private static final int VISION_QUEUE_CAPACITY = 64;
+	private final VisionMeasurementQueue visionQueue =
+		new VisionMeasurementQueue(VISION_QUEUE_CAPACITY);
+	private final VisionMeasurementQueue.MeasurementSink visionSink =
+		this::applyVisionMeasurement;
+	private final Thread visionThread = new Thread(this::runVisionThread, "VisionApply");
+	private volatile long lastVisionApplyNanos = 0;
+	/* Only touched by the thread applying vision measurements */
+	private final Matrix<N3, N1> visionStdDevs = new Matrix<>(Nat.N3(), Nat.N1());
+
+	/* Receives a copy of every odometry sample while Phoenix holds its state lock */
+	private volatile Consumer<SwerveDriveState> stateConsumer = null;
+
+	/* Every odometry sample, waiting for the main loop to log them */
+	private static final int ODOMETRY_BUFFER_CAPACITY = 64;
+	private final OdometrySampleBuffer odometrySamples =
+		new OdometrySampleBuffer(ODOMETRY_BUFFER_CAPACITY, getModules().length);
+
+	/*
+	 * Lockstep simulation stops Phoenix's odometry thread, which runs on wall-clock time,
+	 * and steps a drive model and pose estimator from the robot loop instead. Null
+	 * outside lockstep simulation.
+	 */
+	private LockstepDriveSim lockstepSim = null;
+	private SwerveDrivePoseEstimator lockstepEstimator = null;
+	private final SwerveDriveState lockstepState = new SwerveDriveState();
+	private final VisionMeasurementQueue.MeasurementSink lockstepVisionSink =
+		this::applyLockstepVisionMeasurement;
+	private SwerveRequest lastRequest = null;
+
+	/*
+	 * Where the simulated robot really is, sampled alongside the odometry so simulations
+	 * can be scored against it. In lockstep this is the drive model's pose, otherwise it
+	 * is wheel odometry, which never sees vision corrections. Null on a real robot.
+	 */
+	private final OdometrySampleBuffer truthSamples = Utils.isSimulation()
+		? new OdometrySampleBuffer(ODOMETRY_BUFFER_CAPACITY, getModules().length)
+		: null;
+	private final SwerveDriveState truthState = new SwerveDriveState();
+	/* Only touched by the odometry thread */
+	private SwerveDriveOdometry truthOdometry = null;
+	private final AtomicReference<Pose2d> pendingTruthReset = new AtomicReference<>();
+
 	/* Blue alliance sees forward as 0 degrees (toward red alliance wall) */
 	private static final Rotation2d BLUE_ALLIANCE_PERSPECTIVE_ROTATION = Rotation2d.kZero;
 	/* Red alliance sees forward as 180 degrees (toward blue alliance wall) */
 	private static final Rotation2d RED_ALLIANCE_PERSPECTIVE_ROTATION = Rotation2d.k180deg;
 	/* Keep track if we've ever applied the operator perspective before or not */
 	private boolean hasAppliedOperatorPerspective = false;
+	private Rotation2d operatorForward = BLUE_ALLIANCE_PERSPECTIVE_ROTATION;
 
 	/** Swerve request to apply during robot-centric path following. */
 	private final SwerveRequest.ApplyRobotSpeeds pathApplyRobotSpeeds =
@@ -135,9 +197,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		SwerveModuleConstants<?, ?, ?>... modules
 	) {
 		super(drivetrainConstants, modules);
-		if (Utils.isSimulation()) {
-			startSimThread();
-		}
+		startOdometry();
 	}
 
 	/**
@@ -159,9 +219,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		SwerveModuleConstants<?, ?, ?>... modules
 	) {
 		super(drivetrainConstants, odometryUpdateFrequency, modules);
-		if (Utils.isSimulation()) {
-			startSimThread();
-		}
+		startOdometry();
 	}
 
 	/**
@@ -198,9 +256,7 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 			modules
 		);
 
-		if (Utils.isSimulation()) {
-			startSimThread();
-		}
+		startOdometry();
 	}
 
 	/**
@@ -235,6 +291,38 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		return sysIdRoutineToApply.dynamic(direction);
 	}
 
+	/**
+	 * Applies a control request to the drivetrain. In lockstep simulation the
+	 * request also drives the drive model on the next step.
+	 *
+	 * @param request Request to apply
+	 */
+	@Override
+	public void setControl(SwerveRequest request) {
+		lastRequest = request;
+		super.setControl(request);
+	}
+
+	/**
+	 * Resets the pose of the robot. In lockstep simulation this also moves the
+	 * simulated robot, which is how a simulation places the robot at its start.
+	 *
+	 * @param pose Pose to make the current pose
+	 */
+	@Override
+	public void resetPose(Pose2d pose) {
+		if (lockstepSim != null) {
+			lockstepSim.reset(pose);
+			lockstepEstimator.resetPosition(
+				lockstepSim.getRawHeading(), lockstepSim.getModulePositions(), pose);
+			updateLockstepState(Timer.getFPGATimestamp());
+			publishState(lockstepState);
+		} else if (truthSamples != null) {
+			pendingTruthReset.set(pose);
+		}
+		super.resetPose(pose);
+	}
+
 	@Override
 	public void periodic() {
 		/*
@@ -248,16 +336,46 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		 */
 		if (!hasAppliedOperatorPerspective || DriverStation.isDisabled()) {
 			DriverStation.getAlliance().ifPresent(allianceColor -> {
-				setOperatorPerspectiveForward(
-					allianceColor == Alliance.Red
-						? RED_ALLIANCE_PERSPECTIVE_ROTATION
-						: BLUE_ALLIANCE_PERSPECTIVE_ROTATION
-				);
+				operatorForward = allianceColor == Alliance.Red
+					? RED_ALLIANCE_PERSPECTIVE_ROTATION
+					: BLUE_ALLIANCE_PERSPECTIVE_ROTATION;
+				setOperatorPerspectiveForward(operatorForward);
 				hasAppliedOperatorPerspective = true;
 			});
 		}
 	}
 
+	/**
+	 * Starts sampling odometry. Outside lockstep simulation Phoenix's odometry thread
+	 * samples it and wakes the vision thread. In lockstep simulation the odometry
+	 * thread is stopped and {@link #stepSim(double, int)} samples the drive model.
+	 */
+	private void startOdometry() {
+		if (Utils.isSimulation() && SimConstants.LOCKSTEP_SIM) {
+			getOdometryThread().stop();
+			int moduleCount = getModules().length;
+			lockstepSim = new LockstepDriveSim(getKinematics(), moduleCount);
+			lockstepEstimator = new SwerveDrivePoseEstimator(
+				getKinematics(),
+				lockstepSim.getRawHeading(),
+				lockstepSim.getModulePositions(),
+				Pose2d.kZero);
+			lockstepState.ModuleStates = lockstepSim.getModuleStates();
+			lockstepState.ModuleTargets = lockstepSim.getModuleStates();
+			lockstepState.ModulePositions = lockstepSim.getModulePositions();
+			updateLockstepState(Timer.getFPGATimestamp());
+			truthState.Speeds = lockstepSim.getSpeeds();
+			truthState.ModuleStates = lockstepSim.getModuleStates();
+			return;
+		}
+
+		startVisionThread();
+		registerTelemetry(this::onOdometryUpdate);
+		if (Utils.isSimulation()) {
+			startSimThread();
+		}
+	}
+
 	private void startSimThread() {
 		lastSimTime = Utils.getCurrentTimeSeconds();
 
@@ -273,6 +391,49 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		simNotifier.startPeriodic(SIM_LOOP_PERIOD);
 	}
 
+	/**
+	 * Advances the simulated drivetrain by one robot loop in fixed-length steps. Used in
+	 * lockstep simulation instead of the sim and odometry threads, so the physics and
+	 * odometry do not depend on how long the host took to run the loop.
+	 * <p>
+	 * Vision measurements queued during the loop are applied first. Each step then drives
+	 * the drive model with the last control request and samples odometry at the
+	 * simulated FPGA time the step ends at.
+	 *
+	 * @param loopPeriod The simulated time to advance in seconds
+	 * @param substeps   The number of equal physics steps to split the loop into
+	 */
+	public void stepSim(double loopPeriod, int substeps) {
+		double deltaTime = loopPeriod / substeps;
+		double loopStart = Timer.getFPGATimestamp();
+		visionQueue.drain(lockstepVisionSink);
+
+		for (int i = 0; i < substeps; i++) {
+			applyLockstepRequest();
+			lockstepSim.step(deltaTime);
+			double timestamp = loopStart + (i + 1) * deltaTime;
+			lockstepEstimator.updateWithTime(
+				timestamp, lockstepSim.getRawHeading(), lockstepSim.getModulePositions());
+			updateLockstepState(timestamp);
+			odometrySamples.offer(lockstepState, timestamp);
+			publishState(lockstepState);
+			truthState.Pose = lockstepSim.getPose();
+			truthSamples.offer(truthState, timestamp);
+		}
+	}
+
+	/**
+	 * Sets the function that receives every odometry sample. It is called from the
+	 * odometry thread while Phoenix holds the drivetrain state lock, so the state it
+	 * receives is consistent, but it must copy what it needs and return quickly. In
+	 * lockstep simulation it is called from the robot loop instead.
+	 *
+	 * @param consumer Function receiving each drivetrain state, only valid during the call
+	 */
+	public void setStateConsumer(Consumer<SwerveDriveState> consumer) {
+		stateConsumer = consumer;
+	}
+
 	/**
 	 * Adds a vision measurement to the Kalman Filter. This will correct the odometry pose estimate
 	 * while still accounting for measurement noise.
@@ -292,6 +453,10 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 	 * Adds a vision measurement to the Kalman Filter. This will correct the odometry pose estimate
 	 * while still accounting for measurement noise.
 	 * <p>
+	 * The measurement is queued and applied by the vision thread after the next odometry
+	 * sample, so callers never block on the drivetrain state lock. Measurements queued from any
+	 * thread are applied in timestamp order.
+	 * <p>
 	 * Note that the vision measurement standard deviations passed into this method
 	 * will continue to apply to future measurements until a subsequent call to
 	 * {@link #setVisionMeasurementStdDevs(Matrix)} or this method.
@@ -307,9 +472,267 @@ public class CommandSwerveDrivetrain extends TunerSwerveDrivetrain implements Su
 		double timestampSeconds,
 		Matrix<N3, N1> visionMeasurementStdDevs
 	) {
+		addVisionMeasurement(
+			visionRobotPoseMeters.getX(),
+			visionRobotPoseMeters.getY(),
+			visionRobotPoseMeters.getRotation().getRadians(),
+			timestampSeconds,
+			visionMeasurementStdDevs.get(0, 0),
+			visionMeasurementStdDevs.get(1, 0),
+			visionMeasurementStdDevs.get(2, 0));
+	}
+
+	/**
+	 * Adds a vision measurement to the Kalman Filter, passed as primitives so the caller
+	 * does not need to allocate a pose or matrix. The measurement is queued and applied
+	 * by the vision thread in the same way as
+	 * {@link #addVisionMeasurement(Pose2d, double, Matrix)}.
+	 *
+	 * @param x The robot X position in meters
+	 * @param y The robot Y position in meters
+	 * @param theta The robot heading in radians
+	 * @param timestampSeconds The timestamp of the vision measurement in seconds
+	 * @param xStdDev The X standard deviation in meters
+	 * @param yStdDev The Y standard deviation in meters
+	 * @param thetaStdDev The heading standard deviation in radians
+	 */
+	public void addVisionMeasurement(
+		double x,
+		double y,
+		double theta,
+		double timestampSeconds,
+		double xStdDev,
+		double yStdDev,
+		double thetaStdDev
+	) {
+		visionQueue.offer(x, y, theta, timestampSeconds, xStdDev, yStdDev, thetaStdDev);
+	}
+
+	/**
+	 * Returns the number of vision measurements waiting for the vision thread.
+	 *
+	 * @return The vision queue depth
+	 */
+	public int getVisionQueueDepth() {
+		return visionQueue.size();
+	}
+
+	/**
+	 * Returns the number of vision measurements dropped because the queue was full.
+	 *
+	 * @return The number of dropped vision measurements
+	 */
+	public long getVisionQueueDropped() {
+		return visionQueue.getDroppedCount();
+	}
+
+	/**
+	 * Returns how long the vision thread last spent applying queued vision
+	 * measurements, including waiting on the drivetrain state lock.
+	 *
+	 * @return The time spent applying the last batch in nanoseconds
+	 */
+	public long getLastVisionApplyNanos() {
+		return lastVisionApplyNanos;
+	}
+
+	/**
+	 * Returns the buffer of odometry samples captured at the full odometry rate.
+	 * Only the main loop may drain it.
+	 *
+	 * @return The odometry sample buffer
+	 */
+	public OdometrySampleBuffer getOdometrySamples() {
+		return odometrySamples;
+	}
+
+	/**
+	 * Returns the buffer of true simulated robot poses, sampled with the odometry.
+	 * Only the main loop may drain it.
+	 *
+	 * @return The ground truth sample buffer, or null on a real robot
+	 */
+	public OdometrySampleBuffer getTruthSamples() {
+		return truthSamples;
+	}
+
+	/**
+	 * Called by the odometry thread after each odometry sample.
+	 *
+	 * @param state The latest drivetrain state
+	 */
+	private void onOdometryUpdate(SwerveDriveState state) {
+		double timestamp = Utils.currentTimeToFPGATime(state.Timestamp);
+		odometrySamples.offer(state, timestamp);
+		publishState(state);
+		if (truthSamples != null) {
+			sampleTruth(state, timestamp);
+		}
+
+		// Only wake the vision thread, adding measurements here would call back into
+		// the drivetrain while Phoenix may hold its state lock
+		if (visionQueue.size() > 0) {
+			LockSupport.unpark(visionThread);
+		}
+	}
+
+	/**
+	 * Advances the simulation's wheel odometry and samples it as the true pose. Only
+	 * called from the odometry thread.
+	 *
+	 * @param state     The latest drivetrain state
+	 * @param timestamp The FPGA time of the state in seconds
+	 */
+	private void sampleTruth(SwerveDriveState state, double timestamp) {
+		Pose2d reset = pendingTruthReset.getAndSet(null);
+		if (truthOdometry == null) {
+			truthOdometry = new SwerveDriveOdometry(
+				getKinematics(), state.RawHeading, state.ModulePositions, state.Pose);
+		}
+		if (reset != null) {
+			truthOdometry.resetPosition(state.RawHeading, state.ModulePositions, reset);
+		}
+
+		truthState.Pose = truthOdometry.update(state.RawHeading, state.ModulePositions);
+		truthState.Speeds = state.Speeds;
+		truthState.ModuleStates = state.ModuleStates;
+		truthSamples.offer(truthState, timestamp);
+	}
+
+	/**
+	 * Passes a drivetrain state to the state consumer, if one is set.
+	 *
+	 * @param state The latest drivetrain state
+	 */
+	private void publishState(SwerveDriveState state) {
+		Consumer<SwerveDriveState> consumer = stateConsumer;
+		if (consumer != null) {
+			consumer.accept(state);
+		}
+	}
+
+	private void startVisionThread() {
+		visionThread.setDaemon(true);
+		visionThread.start();
+	}
+
+	/**
+	 * Applies queued vision measurements each time the odometry thread signals a
+	 * new sample. Runs until the robot program exits.
+	 */
+	private void runVisionThread() {
+		while (!Thread.currentThread().isInterrupted()) {
+			LockSupport.park(this);
+			long start = System.nanoTime();
+			if (visionQueue.drain(visionSink) > 0) {
+				lastVisionApplyNanos = System.nanoTime() - start;
+			}
+		}
+	}
+
+	/**
+	 * Applies a queued vision measurement. Only called from the vision thread.
+	 *
+	 * @param x The robot X position in meters
+	 * @param y The robot Y position in meters
+	 * @param theta The robot heading in radians
+	 * @param timestampSeconds The FPGA timestamp of the measurement in seconds
+	 * @param xStdDev The X standard deviation in meters
+	 * @param yStdDev The Y standard deviation in meters
+	 * @param thetaStdDev The heading standard deviation in radians
+	 */
+	private void applyVisionMeasurement(
+		double x,
+		double y,
+		double theta,
+		double timestampSeconds,
+		double xStdDev,
+		double yStdDev,
+		double thetaStdDev
+	) {
+		// Phoenix copies the standard deviations, so one matrix can be reused
+		visionStdDevs.set(0, 0, xStdDev);
+		visionStdDevs.set(1, 0, yStdDev);
+		visionStdDevs.set(2, 0, thetaStdDev);
 		super.addVisionMeasurement(
-			visionRobotPoseMeters,
+			new Pose2d(x, y, new Rotation2d(theta)),
 			Utils.fpgaToCurrentTime(timestampSeconds),
-			visionMeasurementStdDevs);
+			visionStdDevs);
+	}
+
+	/**
+	 * Sets the drive model's speeds from the last control request. Field-centric and
+	 * robot speed requests are followed exactly, anything else stops the robot.
+	 */
+	private void applyLockstepRequest() {
+		SwerveRequest request = lastRequest;
+		if (request instanceof SwerveRequest.FieldCentric fieldCentric) {
+			double vx = fieldCentric.VelocityX;
+			double vy = fieldCentric.VelocityY;
+			double omega = fieldCentric.RotationalRate;
+			if (Math.hypot(vx, vy) < fieldCentric.Deadband) {
+				vx = 0.0;
+				vy = 0.0;
+			}
+			if (Math.abs(omega) < fieldCentric.RotationalDeadband) {
+				omega = 0.0;
+			}
+
+			// Rotate into the robot's frame using the estimated heading, as Phoenix does
+			Rotation2d heading = lockstepState.Pose.getRotation();
+			if (fieldCentric.ForwardPerspective == ForwardPerspectiveValue.OperatorPerspective) {
+				heading = heading.minus(operatorForward);
+			}
+			double cos = heading.getCos();
+			double sin = heading.getSin();
+			lockstepSim.setSpeeds(vx * cos + vy * sin, -vx * sin + vy * cos, omega);
+		} else if (request instanceof SwerveRequest.ApplyRobotSpeeds robotSpeeds) {
+			lockstepSim.setSpeeds(
+				robotSpeeds.Speeds.vxMetersPerSecond,
+				robotSpeeds.Speeds.vyMetersPerSecond,
+				robotSpeeds.Speeds.omegaRadiansPerSecond);
+		} else {
+			lockstepSim.setSpeeds(0.0, 0.0, 0.0);
+		}
+	}
+
+	/**
+	 * Fills the lockstep drivetrain state from the drive model and pose estimator.
+	 *
+	 * @param timestamp The FPGA time of the state in seconds
+	 */
+	private void updateLockstepState(double timestamp) {
+		lockstepState.Pose = lockstepEstimator.getEstimatedPosition();
+		lockstepState.RawHeading = lockstepSim.getRawHeading();
+		lockstepState.Speeds = lockstepSim.getSpeeds();
+		lockstepState.Timestamp = timestamp;
+	}
+
+	/**
+	 * Applies a queued vision measurement to the lockstep pose estimator. Only called
+	 * from the robot loop in lockstep simulation.
+	 *
+	 * @param x The robot X position in meters
+	 * @param y The robot Y position in meters
+	 * @param theta The robot heading in radians
+	 * @param timestampSeconds The FPGA timestamp of the measurement in seconds
+	 * @param xStdDev The X standard deviation in meters
+	 * @param yStdDev The Y standard deviation in meters
+	 * @param thetaStdDev The heading standard deviation in radians
+	 */
+	private void applyLockstepVisionMeasurement(
+		double x,
+		double y,
+		double theta,
+		double timestampSeconds,
+		double xStdDev,
+		double yStdDev,
+		double thetaStdDev
+	) {
+		visionStdDevs.set(0, 0, xStdDev);
+		visionStdDevs.set(1, 0, yStdDev);
+		visionStdDevs.set(2, 0, thetaStdDev);
+		lockstepEstimator.addVisionMeasurement(
+			new Pose2d(x, y, new Rotation2d(theta)), timestampSeconds, visionStdDevs);
 	}
 }
@@ -10,6 +10,7 @@ import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.units.measure.AngularVelocity;
 import edu.wpi.first.units.measure.Distance;
+import frc.robot.systems.VisionFusion.FusionMode;
 
 public class Constants {
 	public class DriveConstants {
@@ -24,6 +25,9 @@ public class Constants {
 		// 1 = 100% speed, 0.5 = 50% speed, 0.3 = 30% speed, and so on
 		public static final double TRANSLATIONAL_DAMP = 1;
 		public static final double ROTATIONAL_DAMP = 1;
+
+		// Odometry samples kept for past pose lookups, just over 2 s at 250 Hz
+		public static final int POSE_HISTORY_SAMPLES = 512;
 	}
 
 	public class AutoConstants {
@@ -52,6 +56,65 @@ public class Constants {
 		public static final double STEER_S = 0;
 	}
 
+	public static final class SchedulerConstants {
+		// Periods and budgets in seconds, higher priorities run first in a loop
+		public static final double DRIVE_PERIOD_SECS = 0.02;
+		public static final double DRIVE_STATE_BUDGET_SECS = 0.002;
+		public static final int DRIVE_STATE_PRIORITY = 30;
+		public static final double DRIVE_BUDGET_SECS = 0.002;
+		public static final int DRIVE_PRIORITY = 20;
+		public static final double VISION_PERIOD_SECS = 0.02;
+		public static final double VISION_BUDGET_SECS = 0.006;
+		public static final int VISION_PRIORITY = 10;
+		public static final double DIAGNOSTICS_PERIOD_SECS = 0.2;
+		public static final double DIAGNOSTICS_BUDGET_SECS = 0.002;
+		public static final int DIAGNOSTICS_PRIORITY = 0;
+		public static final int SCENARIO_PRIORITY = 0;
+
+		// How often the profiler reports loop time percentiles
+		public static final double PROFILER_WINDOW_SECS = 1.0;
+	}
+
+	public static final class LoggingConstants {
+		// MATCH drops debug keys and decimates detail keys, DEBUG logs everything.
+		// Override with -Dfrc.log.profile=DEBUG
+		public static final String LOG_PROFILE = System.getProperty("frc.log.profile", "MATCH");
+		// Loops between writes of detail keys in a match
+		public static final int CAMERA_POSES_DECIMATION = 5;
+		public static final int MODULE_STATES_DECIMATION = 5;
+
+		// NetworkTables publishing on the real robot. The budget keeps NT well under the
+		// field radio limit; set -Dfrc.log.ntFull=true to publish every key instead
+		public static final boolean NT_FULL_PUBLISH = Boolean.getBoolean("frc.log.ntFull");
+		public static final double NT_BUDGET_BYTES_PER_SEC = 64_000;
+		// Higher priorities keep publishing when the budget runs out
+		public static final int NT_PRIORITY_HIGH = 2;
+		public static final int NT_PRIORITY_NORMAL = 1;
+		public static final int NT_PRIORITY_LOW = 0;
+		public static final double NT_POSE_RATE_HZ = 50;
+		public static final double NT_STATUS_RATE_HZ = 10;
+		public static final double NT_DIAGNOSTICS_RATE_HZ = 1;
+	}
+
+	public static final class SimConstants {
+		// Log to replay, an empty path asks AdvantageScope for the open log. Replay output
+		// goes next to the log with a _sim suffix unless an output file is given
+		public static final String REPLAY_LOG = System.getProperty("frc.replay.log");
+		public static final String REPLAY_OUTPUT = System.getProperty("frc.replay.output");
+
+		// Step the robot loop and drivetrain physics on a fixed simulated clock instead of
+		// wall time, with the drivetrain following its commands exactly so runs repeat.
+		// Enable with -Dfrc.sim.lockstep=true, always on in replay
+		public static final boolean LOCKSTEP_SIM =
+			Boolean.getBoolean("frc.sim.lockstep") || REPLAY_LOG != null;
+		// Physics updates per robot loop in lockstep mode, 4 gives 5 ms steps at 50 Hz
+		public static final int PHYSICS_SUBSTEPS = Integer.getInteger("frc.sim.substeps", 4);
+
+		// Scenario to run and where to write its log and results, set by the scenario farm
+		public static final String SCENARIO_FILE = System.getProperty("frc.sim.scenario");
+		public static final String SIM_OUTPUT_DIR = System.getProperty("frc.sim.output", "logs");
+	}
+
 	public static final class VisionConstants {
 
 		public static final AprilTagFieldLayout TAG_LAYOUT =
@@ -75,6 +138,10 @@ public class Constants {
 
 		public static final double MAX_AMBIGUITY = 0.1;
 		public static final double MAX_Z_ERROR = 0.3; // meters
+		// Reject frames taken while the robot moves faster than MAX_SPEED_FOR_VISION. Off
+		// until the limit is tuned from match logs, the value below is only a starting point
+		public static final boolean MAX_SPEED_FILTER_ENABLED = false;
+		public static final double MAX_SPEED_FOR_VISION = 4.0; // meters per second
 		public static final Distance STOP_PATHFINDING_UPDATES = Meters.of(2);
 
 		public static final double LINEAR_STD_DEV_BASELINE = 0.02;
@@ -84,5 +151,36 @@ public class Constants {
 			1.0, // Reef Camera
 			0.4 // Station Camera
 		};
+
+		// Initial per-camera buffer size for pose observations logged each cycle
+		public static final int MAX_POSE_OBSERVATIONS_PER_CYCLE = 16;
+
+		// Estimate poses as camera results arrive instead of once per loop. Off until the
+		// event-driven path checks the coprocessor's PhotonVision version like
+		// PhotonCamera.getAllUnreadResults does, since a mismatch misreads results silently
+		public static final boolean EVENT_DRIVEN_INGEST = false;
+		public static final int INGEST_QUEUE_CAPACITY = 32;
+
+		// Merge the measurements accepted each cycle before sending them to the drivetrain.
+		// Off by default since frames from one camera are not independent.
+		public static final FusionMode FUSION_MODE = FusionMode.NONE;
+		public static final double FUSION_WINDOW_SECS = 0.05;
+
+		// Use the analytic headless camera model instead of PhotonCameraSim in simulation.
+		// Enable with -Dfrc.vision.headless=true
+		public static final boolean HEADLESS_VISION_SIM = Boolean.getBoolean("frc.vision.headless");
+		public static final long SIM_NOISE_SEED = Long.getLong("frc.sim.seed", 0L);
+		public static final double TAG_SIZE_METERS = Units.inchesToMeters(6.5);
+		public static final int SIM_CAMERA_WIDTH_PX = 960;
+		public static final int SIM_CAMERA_HEIGHT_PX = 720;
+		public static final double SIM_CAMERA_DIAGONAL_FOV_DEG = 90.0;
+		public static final double SIM_CAMERA_FPS = 30.0;
+		public static final double SIM_LATENCY_MS = 35.0;
+		public static final double SIM_LATENCY_STD_DEV_MS = 5.0;
+		public static final double SIM_LINEAR_NOISE_AT_1M = 0.02; // meters
+		public static final double SIM_ANGULAR_NOISE_AT_1M = 0.02; // radians
+		public static final double SIM_MAX_AMBIGUITY = 0.2;
+		public static final double SIM_MAX_TAG_DISTANCE = 6.0; // meters
+		public static final double SIM_MIN_TAG_AREA_PX = 100.0;
 	}
 }
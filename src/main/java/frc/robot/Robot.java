@@ -3,21 +3,73 @@
 // the WPILib BSD license file in the root directory of this project.
 package frc.robot;
 
+import static frc.robot.Constants.LoggingConstants.CAMERA_POSES_DECIMATION;
+import static frc.robot.Constants.LoggingConstants.LOG_PROFILE;
+import static frc.robot.Constants.LoggingConstants.MODULE_STATES_DECIMATION;
+import static frc.robot.Constants.LoggingConstants.NT_BUDGET_BYTES_PER_SEC;
+import static frc.robot.Constants.LoggingConstants.NT_DIAGNOSTICS_RATE_HZ;
+import static frc.robot.Constants.LoggingConstants.NT_FULL_PUBLISH;
+import static frc.robot.Constants.LoggingConstants.NT_POSE_RATE_HZ;
+import static frc.robot.Constants.LoggingConstants.NT_PRIORITY_HIGH;
+import static frc.robot.Constants.LoggingConstants.NT_PRIORITY_LOW;
+import static frc.robot.Constants.LoggingConstants.NT_PRIORITY_NORMAL;
+import static frc.robot.Constants.LoggingConstants.NT_STATUS_RATE_HZ;
+import static frc.robot.Constants.SchedulerConstants.DIAGNOSTICS_BUDGET_SECS;
+import static frc.robot.Constants.SchedulerConstants.DIAGNOSTICS_PERIOD_SECS;
+import static frc.robot.Constants.SchedulerConstants.DIAGNOSTICS_PRIORITY;
+import static frc.robot.Constants.SchedulerConstants.DRIVE_BUDGET_SECS;
+import static frc.robot.Constants.SchedulerConstants.DRIVE_PERIOD_SECS;
+import static frc.robot.Constants.SchedulerConstants.DRIVE_PRIORITY;
+import static frc.robot.Constants.SchedulerConstants.DRIVE_STATE_BUDGET_SECS;
+import static frc.robot.Constants.SchedulerConstants.DRIVE_STATE_PRIORITY;
+import static frc.robot.Constants.SchedulerConstants.PROFILER_WINDOW_SECS;
+import static frc.robot.Constants.SchedulerConstants.SCENARIO_PRIORITY;
+import static frc.robot.Constants.SchedulerConstants.VISION_BUDGET_SECS;
+import static frc.robot.Constants.SchedulerConstants.VISION_PERIOD_SECS;
+import static frc.robot.Constants.SchedulerConstants.VISION_PRIORITY;
+import static frc.robot.Constants.SimConstants.LOCKSTEP_SIM;
+import static frc.robot.Constants.SimConstants.PHYSICS_SUBSTEPS;
+import static frc.robot.Constants.SimConstants.REPLAY_LOG;
+import static frc.robot.Constants.SimConstants.REPLAY_OUTPUT;
+import static frc.robot.Constants.SimConstants.SCENARIO_FILE;
+import static frc.robot.Constants.SimConstants.SIM_OUTPUT_DIR;
+import static frc.robot.Constants.VisionConstants.HEADLESS_VISION_SIM;
+import static frc.robot.Constants.VisionConstants.MAX_SPEED_FILTER_ENABLED;
+import static frc.robot.Constants.VisionConstants.MAX_SPEED_FOR_VISION;
 import static frc.robot.Constants.VisionConstants.REEF_CAMERA_NAME;
 import static frc.robot.Constants.VisionConstants.ROBOT_TO_REEF_CAM;
 import static frc.robot.Constants.VisionConstants.ROBOT_TO_STATION_CAM;
+import static frc.robot.Constants.VisionConstants.SIM_NOISE_SEED;
 import static frc.robot.Constants.VisionConstants.STATION_CAMERA_NAME;
 
+import java.nio.file.Path;
+
+import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
 import org.littletonrobotics.junction.networktables.NT4Publisher;
+import org.littletonrobotics.junction.wpilog.WPILOGReader;
 import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 
 // WPILib Imports
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.robot.sim.ScenarioRunner;
 import frc.robot.systems.DriveFSMSystem;
+import frc.robot.systems.SystemScheduler;
 import frc.robot.systems.Vision;
+import frc.robot.systems.Vision.VisionConsumer;
+import frc.robot.systems.VisionFilter;
+import frc.robot.systems.VisionIO;
+import frc.robot.systems.VisionIOHeadlessSim;
 import frc.robot.systems.VisionIOPhotonPoseEstimator;
 import frc.robot.systems.VisionIOPhotonPoseEstimatorSim;
+import frc.robot.systems.VisionSimCoordinator;
+import frc.robot.util.BudgetedNT4Publisher;
+import frc.robot.util.JvmTelemetry;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.LogPolicy.Tier;
+import frc.robot.util.LoopProfiler;
 
 // Systems
 /**
@@ -32,6 +84,13 @@ public class Robot extends LoggedRobot {
 	private DriveFSMSystem drivetrain;
 	private Vision vision;
 
+	// Scripted simulation run, only set when started by the scenario farm
+	private ScenarioRunner scenario;
+
+	private LoopProfiler profiler;
+	private JvmTelemetry jvmTelemetry;
+	private SystemScheduler scheduler;
+
 	/**
 	 * This function is run when the robot is first started up and should be used
 	 * for any
@@ -44,30 +103,118 @@ public class Robot extends LoggedRobot {
 
 		Logger.recordMetadata("ProjectName", "MyProject"); // Set a metadata value
 
+		// Choose what gets logged before any system resolves its log keys. Metadata is
+		// only written if recorded before the logger starts.
+		LogPolicy.setProfile(LogPolicy.parseProfile(LOG_PROFILE));
+		LogPolicy.addRule("Vision/Summary/", Tier.SUMMARY, 1);
+		LogPolicy.addRule("Vision/Camera*/RobotPoses", Tier.DETAIL, CAMERA_POSES_DECIMATION);
+		LogPolicy.addRule("Vision/Camera*/TagPoses", Tier.DEBUG, 1);
+		LogPolicy.addRule("Swerve/States/", Tier.DETAIL, MODULE_STATES_DECIMATION);
+		Logger.recordMetadata("LogProfile", LogPolicy.getProfile().name());
+
 		if (isReal()) {
 			Logger.addDataReceiver(new WPILOGWriter()); // Log to a USB stick ("/U/logs")
-			Logger.addDataReceiver(new NT4Publisher()); // Publish data to NetworkTables
+			if (NT_FULL_PUBLISH) {
+				Logger.addDataReceiver(new NT4Publisher()); // Publish data to NetworkTables
+			} else {
+				// Publish a budgeted subset to NetworkTables, the USB log still gets everything
+				Logger.addDataReceiver(new BudgetedNT4Publisher(NT_BUDGET_BYTES_PER_SEC)
+					.allow("DriverStation/", NT_PRIORITY_HIGH, NT_POSE_RATE_HZ)
+					.allow("RealOutputs/Swerve/Drivetrain Pose", NT_PRIORITY_HIGH, NT_POSE_RATE_HZ)
+					.allow("RealOutputs/FSM/*/State", NT_PRIORITY_NORMAL, NT_STATUS_RATE_HZ)
+					.allow("RealOutputs/Vision/Summary/", NT_PRIORITY_NORMAL, NT_STATUS_RATE_HZ)
+					.allow("Vision/Camera*/Connected", NT_PRIORITY_NORMAL, NT_STATUS_RATE_HZ)
+					.allow("RealOutputs/Profiler/", NT_PRIORITY_LOW, NT_DIAGNOSTICS_RATE_HZ)
+					.allow("RealOutputs/JVM/", NT_PRIORITY_LOW, NT_DIAGNOSTICS_RATE_HZ));
+			}
+		} else if (isSimulation() && REPLAY_LOG != null) {
+			// Replay a log as fast as possible, writing what the code does now to a new log.
+			// The drivetrain is simulated, not replayed, so its pose and odometry outputs
+			// will not match the log. Only decisions made from logged inputs reproduce.
+			String logPath = REPLAY_LOG.isEmpty() ? LogFileUtil.findReplayLog() : REPLAY_LOG;
+			Logger.setReplaySource(new WPILOGReader(logPath));
+			Logger.addDataReceiver(new WPILOGWriter(REPLAY_OUTPUT != null
+				? REPLAY_OUTPUT
+				: LogFileUtil.addPathSuffix(logPath, "_sim")));
+		} else if (isSimulation() && SCENARIO_FILE != null) {
+			Logger.addDataReceiver(new WPILOGWriter(SIM_OUTPUT_DIR)); // Headless scenario run
 		} else if (isSimulation()) {
 			Logger.addDataReceiver(new NT4Publisher());
 		}
 
+		if (isSimulation() && LOCKSTEP_SIM) {
+			// Freeze the simulated clock, simulationPeriodic advances it one loop at a time
+			setUseTiming(false);
+			SimHooks.pauseTiming();
+		}
+
 		Logger.start(); // Start
 
 		// Instantiate all systems here
 		drivetrain = new DriveFSMSystem();
 
+		VisionConsumer visionConsumer = drivetrain::addVisionMeasurement;
+		if (isSimulation() && SCENARIO_FILE != null) {
+			scenario = new ScenarioRunner(
+					Path.of(SCENARIO_FILE), Path.of(SIM_OUTPUT_DIR), drivetrain);
+			input = scenario.getInput();
+			visionConsumer = scenario.wrap(visionConsumer);
+		}
+
 		if (isReal()) {
 			vision = new Vision(
-					drivetrain::addVisionMeasurement,
+					visionConsumer,
 					new VisionIOPhotonPoseEstimator(REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM),
 					new VisionIOPhotonPoseEstimator(STATION_CAMERA_NAME, ROBOT_TO_STATION_CAM));
+		} else if (isSimulation() && REPLAY_LOG != null) {
+			// Camera inputs come from the log, so the IO does nothing
+			vision = new Vision(visionConsumer, new VisionIO() { }, new VisionIO() { });
+		} else if (isSimulation() && HEADLESS_VISION_SIM) {
+			vision = new Vision(
+					visionConsumer,
+					new VisionIOHeadlessSim(
+							REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM, drivetrain::truePoseAt,
+							SIM_NOISE_SEED),
+					new VisionIOHeadlessSim(
+							STATION_CAMERA_NAME, ROBOT_TO_STATION_CAM, drivetrain::truePoseAt,
+							SIM_NOISE_SEED));
 		} else if (isSimulation()) {
+			var visionSim = new VisionSimCoordinator(drivetrain::getPose);
 			vision = new Vision(
-					drivetrain::addVisionMeasurement,
+					visionConsumer,
 					new VisionIOPhotonPoseEstimatorSim(
-							REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM, drivetrain::getPose),
+							REEF_CAMERA_NAME, ROBOT_TO_REEF_CAM, visionSim),
 					new VisionIOPhotonPoseEstimatorSim(
-							STATION_CAMERA_NAME, ROBOT_TO_STATION_CAM, drivetrain::getPose));
+							STATION_CAMERA_NAME, ROBOT_TO_STATION_CAM, visionSim));
+		}
+
+		// Skip frames taken while moving fast before running the default checks. The speeds
+		// are logged inputs so a replay rejects the same frames as the match.
+		if (MAX_SPEED_FILTER_ENABLED) {
+			vision.addPreFilter(
+					"MaxSpeed",
+					VisionFilter.maxSpeed(
+							drivetrain::getLoggedChassisSpeeds, MAX_SPEED_FOR_VISION));
+		}
+
+		// Capture the drivetrain state first so every system sees the same snapshot
+		profiler = new LoopProfiler(PROFILER_WINDOW_SECS);
+		jvmTelemetry = new JvmTelemetry();
+		scheduler = new SystemScheduler(getPeriod(), profiler, jvmTelemetry);
+		scheduler.addTask(
+				"DriveState", DRIVE_PERIOD_SECS, DRIVE_STATE_BUDGET_SECS, DRIVE_STATE_PRIORITY,
+				drivetrain::periodic);
+		scheduler.addSystem(
+				"Drive", drivetrain, this::pollTeleopInput,
+				DRIVE_PERIOD_SECS, DRIVE_BUDGET_SECS, DRIVE_PRIORITY);
+		scheduler.addSubsystem(
+				"Vision", vision, VISION_PERIOD_SECS, VISION_BUDGET_SECS, VISION_PRIORITY);
+		scheduler.addTask(
+				"Diagnostics", DIAGNOSTICS_PERIOD_SECS, DIAGNOSTICS_BUDGET_SECS,
+				DIAGNOSTICS_PRIORITY, jvmTelemetry::publish);
+		if (scenario != null) {
+			scheduler.addTask(
+					"Scenario", getPeriod(), getPeriod(), SCENARIO_PRIORITY, scenario::periodic);
 		}
 	}
 
@@ -88,7 +235,6 @@ public class Robot extends LoggedRobot {
 
 	@Override
 	public void teleopPeriodic() {
-		drivetrain.update(input);
 	}
 
 	@Override
@@ -119,12 +265,29 @@ public class Robot extends LoggedRobot {
 
 	@Override
 	public void simulationPeriodic() {
-
+		if (LOCKSTEP_SIM) {
+			drivetrain.stepSim(getPeriod(), PHYSICS_SUBSTEPS);
+			SimHooks.stepTimingAsync(getPeriod());
+		}
 	}
 
-	// Do not use robotPeriodic. Use mode specific periodic methods instead.
+	// Every system runs from the scheduler, which decides what is due each loop.
 	@Override
 	public void robotPeriodic() {
-		vision.periodic();
+		scheduler.run();
+		profiler.periodic();
+		LogPolicy.periodic();
+	}
+
+	/**
+	 * Read the driver inputs for this cycle.
+	 * @return the TeleopInput, or null if the robot is not enabled in teleop
+	 */
+	private TeleopInput pollTeleopInput() {
+		if (!DriverStation.isTeleopEnabled()) {
+			return null;
+		}
+		input.update();
+		return input;
 	}
 }
@@ -1,5 +1,9 @@
 package frc.robot;
 
+import org.littletonrobotics.junction.AutoLog;
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PS4Controller;
 // WPILib Imports
 
@@ -9,14 +13,33 @@ import edu.wpi.first.wpilibj.PS4Controller;
  * This class is the sole owner of WPILib input objects and is responsible for
  * polling input values. Systems may query TeleopInput via its getter methods
  * for inputs by value, but may not access the internal input objects.
+ *
+ * Every input is read once per cycle by {@link #update()} and logged as an
+ * AdvantageKit input, so all systems see the same values within a cycle and
+ * teleop can be replayed from a log.
  */
 public class TeleopInput {
+	/** Driver inputs read in one cycle. */
+	@AutoLog
+	public static class TeleopInputs {
+		public boolean driveConnected = false;
+		public double driveLeftX = 0.0;
+		public double driveLeftY = 0.0;
+		public double driveRightX = 0.0;
+		public double driveRightY = 0.0;
+		public double driveL2 = 0.0;
+		public double driveR2 = 0.0;
+		public int driveButtons = 0; // Bit n is button n + 1
+		public int drivePov = -1;
+	}
+
 	/* ======================== Constants ======================== */
 	private static final int DRIVE_CONTROLLER_PORT = 0;
 
 	/* ======================== Private variables ======================== */
 	// Input objects
 	private PS4Controller driveController;
+	private final TeleopInputsAutoLogged inputs = new TeleopInputsAutoLogged();
 
 	/* ======================== Constructor ======================== */
 	/**
@@ -29,6 +52,16 @@ public class TeleopInput {
 	}
 
 	/* ======================== Public methods ======================== */
+	/**
+	 * Read every input for this cycle and log them. Must be called once per
+	 * cycle before any getter is used. When replaying a log, the logged inputs
+	 * replace the values that were read.
+	 */
+	public void update() {
+		updateInputs(inputs);
+		Logger.processInputs("TeleopInput", inputs);
+	}
+
 	// Getter methods for fetch input values should be defined here.
 	// Method names should be descriptive of the behavior, so the
 	// control mapping is hidden from other classes.
@@ -39,14 +72,14 @@ public class TeleopInput {
 	 * @return Axis value
 	 */
 	public double getDriveLeftJoystickX() {
-		return driveController.getLeftX();
+		return inputs.driveLeftX;
 	}
 	/**
 	 * Get Y axis of Left Joystick.
 	 * @return Axis value
 	 */
 	public double getDriveLeftJoystickY() {
-		return driveController.getLeftY();
+		return inputs.driveLeftY;
 	}
 
 	/* ------------------------ Right Joystick ------------------------ */
@@ -55,7 +88,7 @@ public class TeleopInput {
 	 * @return Axis value
 	 */
 	public double getDriveRightJoystickX() {
-		return driveController.getRightX();
+		return inputs.driveRightX;
 	}
 
 	/**
@@ -63,6 +96,24 @@ public class TeleopInput {
 	 * @return Axis value
 	 */
 	public double getDriveRightJoystickY() {
-		return driveController.getRightY();
+		return inputs.driveRightY;
+	}
+
+	/* ======================== Protected methods ======================== */
+	/**
+	 * Read the current value of every input.
+	 * @param values the inputs to fill in
+	 */
+	protected void updateInputs(TeleopInputs values) {
+		values.driveConnected = DriverStation.isJoystickConnected(DRIVE_CONTROLLER_PORT);
+		values.driveLeftX = driveController.getLeftX();
+		values.driveLeftY = driveController.getLeftY();
+		values.driveRightX = driveController.getRightX();
+		values.driveRightY = driveController.getRightY();
+		values.driveL2 = driveController.getL2Axis();
+		values.driveR2 = driveController.getR2Axis();
+		// Every button in one call
+		values.driveButtons = DriverStation.getStickButtons(DRIVE_CONTROLLER_PORT);
+		values.drivePov = driveController.getPOV();
 	}
 }
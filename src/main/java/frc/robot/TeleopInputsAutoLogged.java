@@ -0,0 +1,51 @@
+package frc.robot;
+
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+public class TeleopInputsAutoLogged extends
+	TeleopInput.TeleopInputs implements LoggableInputs, Cloneable {
+	@Override
+	public void toLog(LogTable table) {
+		table.put("DriveConnected", driveConnected);
+		table.put("DriveLeftX", driveLeftX);
+		table.put("DriveLeftY", driveLeftY);
+		table.put("DriveRightX", driveRightX);
+		table.put("DriveRightY", driveRightY);
+		table.put("DriveL2", driveL2);
+		table.put("DriveR2", driveR2);
+		table.put("DriveButtons", driveButtons);
+		table.put("DrivePov", drivePov);
+	}
+
+	@Override
+	public void fromLog(LogTable table) {
+		driveConnected = table.get("DriveConnected", driveConnected);
+		driveLeftX = table.get("DriveLeftX", driveLeftX);
+		driveLeftY = table.get("DriveLeftY", driveLeftY);
+		driveRightX = table.get("DriveRightX", driveRightX);
+		driveRightY = table.get("DriveRightY", driveRightY);
+		driveL2 = table.get("DriveL2", driveL2);
+		driveR2 = table.get("DriveR2", driveR2);
+		driveButtons = table.get("DriveButtons", driveButtons);
+		drivePov = table.get("DrivePov", drivePov);
+	}
+
+	/**
+	 * Creates and returns a copy of this object.
+	 * @return A copy of this object.
+	 */
+	public TeleopInputsAutoLogged clone() {
+		TeleopInputsAutoLogged copy = new TeleopInputsAutoLogged();
+		copy.driveConnected = this.driveConnected;
+		copy.driveLeftX = this.driveLeftX;
+		copy.driveLeftY = this.driveLeftY;
+		copy.driveRightX = this.driveRightX;
+		copy.driveRightY = this.driveRightY;
+		copy.driveL2 = this.driveL2;
+		copy.driveR2 = this.driveR2;
+		copy.driveButtons = this.driveButtons;
+		copy.drivePov = this.drivePov;
+		return copy;
+	}
+}
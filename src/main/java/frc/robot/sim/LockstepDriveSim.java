@@ -0,0 +1,126 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Deterministic drivetrain model for lockstep simulation.
+ *
+ * Phoenix simulates the drivetrain and samples odometry from its own thread on
+ * wall-clock time, so two lockstep runs of the same scenario see different
+ * odometry. The model instead follows the commanded robot-relative speeds exactly
+ * and is integrated in fixed steps by the robot loop, so the same commands always
+ * give the same poses, module positions and gyro heading. Motor dynamics are not
+ * modelled.
+ */
+public final class LockstepDriveSim {
+	private final SwerveDriveKinematics kinematics;
+	private final ChassisSpeeds speeds = new ChassisSpeeds();
+	private final SwerveModuleState[] moduleStates;
+	private final SwerveModulePosition[] modulePositions;
+	private Pose2d pose = Pose2d.kZero;
+	// Gyro heading, which a pose reset does not change
+	private Rotation2d rawHeading = Rotation2d.kZero;
+
+	/**
+	 * Creates a new LockstepDriveSim at the origin.
+	 * @param driveKinematics the kinematics of the drivetrain
+	 * @param moduleCount the number of swerve modules
+	 */
+	public LockstepDriveSim(SwerveDriveKinematics driveKinematics, int moduleCount) {
+		kinematics = driveKinematics;
+		moduleStates = new SwerveModuleState[moduleCount];
+		modulePositions = new SwerveModulePosition[moduleCount];
+		for (int i = 0; i < moduleCount; i++) {
+			moduleStates[i] = new SwerveModuleState();
+			modulePositions[i] = new SwerveModulePosition();
+		}
+	}
+
+	/**
+	 * Sets the robot-relative speeds to drive at until the next call.
+	 * @param vx the forward speed in meters per second
+	 * @param vy the leftward speed in meters per second
+	 * @param omega the counterclockwise angular speed in radians per second
+	 */
+	public void setSpeeds(double vx, double vy, double omega) {
+		speeds.vxMetersPerSecond = vx;
+		speeds.vyMetersPerSecond = vy;
+		speeds.omegaRadiansPerSecond = omega;
+
+		SwerveModuleState[] targets = kinematics.toSwerveModuleStates(speeds);
+		for (int i = 0; i < moduleStates.length; i++) {
+			moduleStates[i].speedMetersPerSecond = targets[i].speedMetersPerSecond;
+			moduleStates[i].angle = targets[i].angle;
+		}
+	}
+
+	/**
+	 * Advances the model by one step at the current speeds.
+	 * @param dt the step length in seconds
+	 */
+	public void step(double dt) {
+		double dtheta = speeds.omegaRadiansPerSecond * dt;
+		pose = pose.exp(new Twist2d(
+			speeds.vxMetersPerSecond * dt, speeds.vyMetersPerSecond * dt, dtheta));
+		rawHeading = rawHeading.plus(Rotation2d.fromRadians(dtheta));
+		for (int i = 0; i < moduleStates.length; i++) {
+			modulePositions[i].distanceMeters += moduleStates[i].speedMetersPerSecond * dt;
+			modulePositions[i].angle = moduleStates[i].angle;
+		}
+	}
+
+	/**
+	 * Moves the robot to a pose without driving there. The gyro heading and
+	 * module positions keep counting from where they were, as on a real robot.
+	 * @param newPose the new robot pose
+	 */
+	public void reset(Pose2d newPose) {
+		pose = newPose;
+	}
+
+	/**
+	 * Returns the true pose of the simulated robot.
+	 * @return the robot pose
+	 */
+	public Pose2d getPose() {
+		return pose;
+	}
+
+	/**
+	 * Returns the simulated gyro heading.
+	 * @return the gyro heading
+	 */
+	public Rotation2d getRawHeading() {
+		return rawHeading;
+	}
+
+	/**
+	 * Returns the robot-relative speeds the robot is driving at.
+	 * @return the chassis speeds, must not be modified
+	 */
+	public ChassisSpeeds getSpeeds() {
+		return speeds;
+	}
+
+	/**
+	 * Returns the state of every module.
+	 * @return the module states, must not be modified
+	 */
+	public SwerveModuleState[] getModuleStates() {
+		return moduleStates;
+	}
+
+	/**
+	 * Returns the distance driven and angle of every module.
+	 * @return the module positions, must not be modified
+	 */
+	public SwerveModulePosition[] getModulePositions() {
+		return modulePositions;
+	}
+}
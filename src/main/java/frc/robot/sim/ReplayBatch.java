@@ -0,0 +1,198 @@
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays a directory of match logs through the current robot code in parallel.
+ *
+ * Each log is replayed in its own robot process with AdvantageKit replay, which
+ * runs the loop as fast as the code allows and exits at the end of the log. The
+ * replayed output of each log is written to the output directory as name_sim.wpilog
+ * with its console output beside it, ready to compare against the original in
+ * AdvantageScope.
+ *
+ * Only code that reads logged inputs replays exactly. Camera inputs, driver
+ * inputs and the drive state under Drive/State come from the log, so vision
+ * accept and reject decisions match the match. The Phoenix drivetrain is not an
+ * AdvantageKit IO, though, so in replay it is the simulated drivetrain driven by
+ * the replayed joysticks. Its pose, odometry, module states and the effect of
+ * fused vision measurements on the pose estimate do not reproduce the match.
+ *
+ * To check the part that should reproduce, every Vision output in the original
+ * log is compared record by record with the same output in the replayed log,
+ * read through {@link WpilogIndex} so only those keys are decoded. The number
+ * of outputs that differ is reported for each log.
+ *
+ * Usage: ReplayBatch logDir outputDir [parallelism] [timeoutSecs]
+ */
+public final class ReplayBatch {
+	private static final long DEFAULT_TIMEOUT_SECS = 1800;
+	private static final String LOG_EXTENSION = ".wpilog";
+	private static final String REPLAY_SUFFIX = "_sim";
+	private static final double NANOS_PER_SECOND = 1e9;
+	private static final double BYTES_PER_MB = 1 << 20;
+	// Replay writes the outputs of the current code under ReplayOutputs
+	private static final String REAL_OUTPUTS = "RealOutputs/";
+	private static final String REPLAY_OUTPUTS = "ReplayOutputs/";
+	private static final String COMPARED_PREFIX = "Vision/";
+	private static final int HASH_MULTIPLIER = 31;
+
+	private ReplayBatch() {
+	}
+
+	/** The outcome of replaying one log. */
+	private record Result(String name, double seconds, long bytes, int divergedOutputs) {
+	}
+
+	/**
+	 * Replays every log in a directory.
+	 * @param args the log directory, the output directory, and optionally the
+	 *		number of logs to replay at once and the timeout for each one
+	 * @throws Exception if the logs cannot be listed or the batch is interrupted
+	 */
+	public static void main(String... args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: ReplayBatch logDir outputDir [parallelism] [timeoutSecs]");
+			System.exit(1);
+		}
+		Path logDir = Path.of(args[0]);
+		Path outputDir = Path.of(args[1]);
+		int parallelism = args.length > 2
+			? Integer.parseInt(args[2])
+			: Runtime.getRuntime().availableProcessors();
+		long timeoutSecs = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIMEOUT_SECS;
+
+		// Skip the output of earlier replays if they were written next to the logs
+		List<Path> logFiles;
+		try (Stream<Path> files = Files.list(logDir)) {
+			logFiles = files
+				.filter(file -> file.toString().endsWith(LOG_EXTENSION))
+				.filter(file -> !file.toString().endsWith(REPLAY_SUFFIX + LOG_EXTENSION))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		System.out.println("Replaying " + logFiles.size() + " logs, "
+			+ parallelism + " at a time");
+
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		List<Future<Result>> results = new ArrayList<>();
+		for (Path file : logFiles) {
+			results.add(pool.submit(() -> replay(file, outputDir, timeoutSecs)));
+		}
+		pool.shutdown();
+
+		int failures = 0;
+		System.out.printf("%-40s %10s %12s %16s%n",
+			"log", "secs", "output MB", "vision diverged");
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				Result result = results.get(i).get();
+				System.out.printf("%-40s %10.1f %12.1f %16d%n",
+					result.name(), result.seconds(), result.bytes() / BYTES_PER_MB,
+					result.divergedOutputs());
+			} catch (Exception e) {
+				failures++;
+				System.err.println("Replay of " + logFiles.get(i) + " failed: " + e.getCause());
+			}
+		}
+		System.out.printf("Replayed %d logs in %.1f s, %d failed%n",
+			logFiles.size() - failures,
+			(System.nanoTime() - start) / NANOS_PER_SECOND,
+			failures);
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Replays one log in its own robot process and waits for it to finish.
+	 * @param file the log to replay
+	 * @param outputDir the directory to write the replayed log to
+	 * @param timeoutSecs how long to wait before killing the process
+	 * @return the replay's outcome
+	 * @throws Exception if the replay fails, times out or writes no log
+	 */
+	private static Result replay(Path file, Path outputDir, long timeoutSecs) throws Exception {
+		String fileName = file.getFileName().toString();
+		String name = fileName.substring(0, fileName.length() - LOG_EXTENSION.length());
+		Path output = outputDir.resolve(name + REPLAY_SUFFIX + LOG_EXTENSION).toAbsolutePath();
+		Files.deleteIfExists(output);
+
+		long start = System.nanoTime();
+		Process process = RobotProcess.start(
+			Map.of(
+				"frc.replay.log", file.toAbsolutePath().toString(),
+				"frc.replay.output", output.toString()),
+			outputDir.resolve(name + ".console.log"));
+
+		if (!process.waitFor(timeoutSecs, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+			throw new IllegalStateException("Timed out after " + timeoutSecs + " s");
+		}
+		if (process.exitValue() != 0) {
+			throw new IllegalStateException("Exited with code " + process.exitValue());
+		}
+		if (!Files.exists(output)) {
+			throw new IllegalStateException("No replay log written to " + output);
+		}
+
+		double elapsedSecs = (System.nanoTime() - start) / NANOS_PER_SECOND;
+		int diverged = countDivergedOutputs(file, output, COMPARED_PREFIX);
+		System.out.println("Finished " + name);
+		return new Result(name, elapsedSecs, Files.size(output), diverged);
+	}
+
+	/**
+	 * Counts the outputs under a prefix whose records in a replayed log differ
+	 * from the original log, or that the replay did not write at all.
+	 * @param original the match log
+	 * @param replayed the log written by replaying it
+	 * @param prefix the output prefix to compare, such as Vision/
+	 * @return the number of outputs that differ
+	 * @throws IOException if either log cannot be read or indexed
+	 */
+	static int countDivergedOutputs(Path original, Path replayed, String prefix)
+			throws IOException {
+		try (WpilogIndex before = WpilogIndex.open(original);
+				WpilogIndex after = WpilogIndex.open(replayed)) {
+			int diverged = 0;
+			for (String key : before.getKeys()) {
+				if (!key.startsWith(REAL_OUTPUTS + prefix)) {
+					continue;
+				}
+				String replayKey = REPLAY_OUTPUTS + key.substring(REAL_OUTPUTS.length());
+				if (before.getRecordCount(key) != after.getRecordCount(replayKey)
+						|| digest(before, key) != digest(after, replayKey)) {
+					diverged++;
+				}
+			}
+			return diverged;
+		}
+	}
+
+	/**
+	 * Hashes the timestamps and payloads of every record of a key.
+	 * @param index the log
+	 * @param key the key
+	 * @return the hash
+	 * @throws IOException if the log cannot be read
+	 */
+	private static long digest(WpilogIndex index, String key) throws IOException {
+		long[] hash = {0};
+		index.forEachRecord(key, (timestamp, payload) -> {
+			hash[0] = hash[0] * HASH_MULTIPLIER + timestamp;
+			hash[0] = hash[0] * HASH_MULTIPLIER + payload.hashCode();
+		});
+		return hash[0];
+	}
+}
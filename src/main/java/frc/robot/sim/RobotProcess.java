@@ -0,0 +1,52 @@
+package frc.robot.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts a headless simulated robot in a separate JVM. The HAL simulation is
+ * global to a process, so running several robots at once takes one process
+ * each.
+ */
+final class RobotProcess {
+	private static final String ROBOT_MAIN_CLASS = "frc.robot.Main";
+
+	private RobotProcess() {
+	}
+
+	/**
+	 * Starts a robot process with the same classpath and native library path as
+	 * this one. The process always runs with lockstep timing and headless vision.
+	 * @param properties extra system properties to pass to the robot
+	 * @param outputLog the file to write the process's console output to
+	 * @return the running process
+	 * @throws IOException if the process cannot be started
+	 */
+	static Process start(Map<String, String> properties, Path outputLog) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("-Djava.library.path=" + System.getProperty("java.library.path"));
+		command.add("-Djava.awt.headless=true");
+		command.add("-Dfrc.sim.lockstep=true");
+		command.add("-Dfrc.vision.headless=true");
+		for (Map.Entry<String, String> property : properties.entrySet()) {
+			command.add("-D" + property.getKey() + "=" + property.getValue());
+		}
+		command.add(ROBOT_MAIN_CLASS);
+
+		Files.createDirectories(outputLog.getParent());
+		File log = outputLog.toFile();
+		// Environment, including the native library search path, is inherited
+		return new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(log)
+			.start();
+	}
+}
@@ -0,0 +1,146 @@
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * A scripted simulation run, loaded from a properties file.
+ *
+ * <pre>
+ * name = figure-eight
+ * seed = 42
+ * durationSecs = 15
+ * startX = 2.0
+ * startY = 4.0
+ * startHeadingDeg = 0
+ * # time: left X, left Y, right X; each set of values holds until the next time
+ * inputs = 0: 0, -0.5, 0; 3: 0.4, 0, 0.3; 8: 0, 0, 0
+ * </pre>
+ */
+public final class Scenario {
+	private static final int AXES = 3;
+
+	private final String name;
+	private final long seed;
+	private final double durationSecs;
+	private final Pose2d startPose;
+	private final double[] keyframeTimes;
+	private final double[][] keyframeAxes;
+
+	private Scenario(
+			String scenarioName,
+			long noiseSeed,
+			double duration,
+			Pose2d start,
+			double[] times,
+			double[][] axes) {
+		this.name = scenarioName;
+		this.seed = noiseSeed;
+		this.durationSecs = duration;
+		this.startPose = start;
+		this.keyframeTimes = times;
+		this.keyframeAxes = axes;
+	}
+
+	/**
+	 * Loads a scenario from a properties file.
+	 * @param file the scenario file
+	 * @return the scenario
+	 * @throws IOException if the file cannot be read
+	 */
+	public static Scenario load(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file)) {
+			properties.load(reader);
+		}
+
+		String fileName = file.getFileName().toString();
+		String defaultName = fileName.endsWith(".properties")
+			? fileName.substring(0, fileName.length() - ".properties".length())
+			: fileName;
+
+		String[] keyframes = properties.getProperty("inputs", "0: 0, 0, 0").split(";");
+		double[] times = new double[keyframes.length];
+		double[][] axes = new double[keyframes.length][AXES];
+		for (int i = 0; i < keyframes.length; i++) {
+			String[] timeAndAxes = keyframes[i].split(":");
+			String[] values = timeAndAxes.length == 2 ? timeAndAxes[1].split(",") : new String[0];
+			if (values.length != AXES) {
+				throw new IllegalArgumentException(
+					"Invalid input keyframe in " + file + ": " + keyframes[i].trim());
+			}
+			times[i] = Double.parseDouble(timeAndAxes[0].trim());
+			for (int axis = 0; axis < AXES; axis++) {
+				axes[i][axis] = Double.parseDouble(values[axis].trim());
+			}
+			if (i > 0 && times[i] <= times[i - 1]) {
+				throw new IllegalArgumentException(
+					"Input keyframes in " + file + " must be in increasing time order");
+			}
+		}
+
+		return new Scenario(
+			properties.getProperty("name", defaultName),
+			Long.parseLong(properties.getProperty("seed", "0").trim()),
+			Double.parseDouble(properties.getProperty("durationSecs", "15").trim()),
+			new Pose2d(
+				Double.parseDouble(properties.getProperty("startX", "0").trim()),
+				Double.parseDouble(properties.getProperty("startY", "0").trim()),
+				Rotation2d.fromDegrees(
+					Double.parseDouble(properties.getProperty("startHeadingDeg", "0").trim()))),
+			times,
+			axes);
+	}
+
+	/**
+	 * Returns the name of the scenario.
+	 * @return the scenario name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the seed for the simulated sensor noise.
+	 * @return the noise seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Returns how long the scenario runs after the robot is enabled.
+	 * @return the duration in seconds
+	 */
+	public double getDurationSecs() {
+		return durationSecs;
+	}
+
+	/**
+	 * Returns the pose the robot starts at.
+	 * @return the starting pose
+	 */
+	public Pose2d getStartPose() {
+		return startPose;
+	}
+
+	/**
+	 * Returns the scripted value of a joystick axis.
+	 * @param elapsedSecs the time since the scenario started in seconds
+	 * @param axis 0 for left X, 1 for left Y, 2 for right X
+	 * @return the axis value
+	 */
+	double getAxis(double elapsedSecs, int axis) {
+		int keyframe = 0;
+		while (keyframe + 1 < keyframeTimes.length && keyframeTimes[keyframe + 1] <= elapsedSecs) {
+			keyframe++;
+		}
+		return elapsedSecs < keyframeTimes[0] ? 0.0 : keyframeAxes[keyframe][axis];
+	}
+}
@@ -0,0 +1,167 @@
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a directory of {@link Scenario} files as parallel headless robot
+ * simulations and aggregates their results.
+ *
+ * Each scenario runs in its own robot process with lockstep timing, so runs are
+ * reproducible and as many run at once as there are cores. Every run writes its
+ * WPILOG, console output and summary to its own directory under the output
+ * directory, and the summaries are combined into summary.csv.
+ *
+ * Usage: ScenarioFarm scenarioDir outputDir [parallelism] [timeoutSecs]
+ */
+public final class ScenarioFarm {
+	private static final long DEFAULT_TIMEOUT_SECS = 600;
+	private static final String[] COLUMNS = {
+		"name", "seed", "loops", "loopMsMean", "loopMsMax", "poseErrorMean", "poseErrorMax",
+		"visionMeasurements", "visionErrorMean", "visionErrorMax", "finalX", "finalY",
+		"finalHeadingDeg"
+	};
+
+	private ScenarioFarm() {
+	}
+
+	/**
+	 * Runs every scenario in a directory.
+	 * @param args the scenario directory, the output directory, and optionally the
+	 *		number of simulations to run at once and the timeout for each one
+	 * @throws Exception if the scenarios cannot be read or the farm is interrupted
+	 */
+	public static void main(String... args) throws Exception {
+		if (args.length < 2) {
+			System.err.println(
+				"Usage: ScenarioFarm scenarioDir outputDir [parallelism] [timeoutSecs]");
+			System.exit(1);
+		}
+		Path scenarioDir = Path.of(args[0]);
+		Path outputDir = Path.of(args[1]);
+		int parallelism = args.length > 2
+			? Integer.parseInt(args[2])
+			: Runtime.getRuntime().availableProcessors();
+		long timeoutSecs = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIMEOUT_SECS;
+
+		List<Path> scenarioFiles;
+		try (Stream<Path> files = Files.list(scenarioDir)) {
+			scenarioFiles = files
+				.filter(file -> file.toString().endsWith(".properties"))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		System.out.println("Running " + scenarioFiles.size() + " scenarios, "
+			+ parallelism + " at a time");
+
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		List<Future<Properties>> results = new ArrayList<>();
+		for (Path file : scenarioFiles) {
+			results.add(pool.submit(() -> runScenario(file, outputDir, timeoutSecs)));
+		}
+		pool.shutdown();
+
+		List<Properties> summaries = new ArrayList<>();
+		int failures = 0;
+		for (int i = 0; i < results.size(); i++) {
+			try {
+				summaries.add(results.get(i).get());
+			} catch (Exception e) {
+				failures++;
+				System.err.println("Scenario " + scenarioFiles.get(i) + " failed: "
+					+ e.getCause());
+			}
+		}
+
+		writeSummary(summaries, outputDir.resolve("summary.csv"));
+		printSummary(summaries);
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Runs one scenario in its own robot process and waits for it to finish.
+	 * @param file the scenario file
+	 * @param outputRoot the directory holding every run's output
+	 * @param timeoutSecs how long to wait before killing the process
+	 * @return the run's summary
+	 * @throws Exception if the run fails, times out or writes no summary
+	 */
+	private static Properties runScenario(Path file, Path outputRoot, long timeoutSecs)
+			throws Exception {
+		Scenario scenario = Scenario.load(file);
+		Path runDir = outputRoot.resolve(scenario.getName());
+		Files.createDirectories(runDir);
+
+		Process process = RobotProcess.start(
+			Map.of(
+				"frc.sim.scenario", file.toAbsolutePath().toString(),
+				"frc.sim.output", runDir.toAbsolutePath().toString(),
+				"frc.sim.seed", Long.toString(scenario.getSeed())),
+			runDir.resolve("console.log"));
+
+		if (!process.waitFor(timeoutSecs, TimeUnit.SECONDS)) {
+			process.destroyForcibly();
+			throw new IllegalStateException("Timed out after " + timeoutSecs + " s");
+		}
+		if (process.exitValue() != 0) {
+			throw new IllegalStateException("Exited with code " + process.exitValue());
+		}
+
+		Properties summary = new Properties();
+		try (Reader reader = Files.newBufferedReader(runDir.resolve(ScenarioRunner.SUMMARY_FILE))) {
+			summary.load(reader);
+		}
+		System.out.println("Finished " + scenario.getName());
+		return summary;
+	}
+
+	private static void writeSummary(List<Properties> summaries, Path file) throws IOException {
+		Files.createDirectories(file.getParent());
+		try (Writer writer = Files.newBufferedWriter(file)) {
+			writer.write(String.join(",", COLUMNS));
+			writer.write(System.lineSeparator());
+			for (Properties summary : summaries) {
+				List<String> values = new ArrayList<>();
+				for (String column : COLUMNS) {
+					values.add(summary.getProperty(column, ""));
+				}
+				writer.write(String.join(",", values));
+				writer.write(System.lineSeparator());
+			}
+		}
+	}
+
+	private static void printSummary(List<Properties> summaries) {
+		System.out.printf("%-24s %10s %10s %12s %12s%n",
+			"scenario", "loop ms", "max ms", "err mean m", "err max m");
+		double worstError = 0.0;
+		double worstLoop = 0.0;
+		for (Properties summary : summaries) {
+			double errorMax = Double.parseDouble(summary.getProperty("poseErrorMax"));
+			double loopMax = Double.parseDouble(summary.getProperty("loopMsMax"));
+			worstError = Math.max(worstError, errorMax);
+			worstLoop = Math.max(worstLoop, loopMax);
+			System.out.printf("%-24s %10.3f %10.3f %12.4f %12.4f%n",
+				summary.getProperty("name"),
+				Double.parseDouble(summary.getProperty("loopMsMean")),
+				loopMax,
+				Double.parseDouble(summary.getProperty("poseErrorMean")),
+				errorMax);
+		}
+		System.out.printf("Worst loop %.3f ms, worst pose error %.4f m over %d runs%n",
+			worstLoop, worstError, summaries.size());
+	}
+}
@@ -0,0 +1,183 @@
+package frc.robot.sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import frc.robot.TeleopInput;
+import frc.robot.systems.DriveFSMSystem;
+import frc.robot.systems.Vision.VisionConsumer;
+
+/**
+ * Runs one {@link Scenario} inside a simulated robot process started by
+ * {@link ScenarioFarm}.
+ *
+ * The runner places the robot at the scenario's starting pose, enables teleop
+ * through the simulated driver station, and plays the scripted inputs. While it
+ * runs it records how long each robot loop took on the host, how far the
+ * drivetrain's fused pose estimate was from where the simulated robot really
+ * was, and how far each vision measurement sent to the drivetrain was from the
+ * true pose at its timestamp. When the scenario ends it writes those results to
+ * a summary file next to the log and exits the process.
+ */
+public final class ScenarioRunner {
+	/** Name of the results file written to the output directory. */
+	public static final String SUMMARY_FILE = "summary.properties";
+
+	private static final double NANOS_PER_MILLI = 1e6;
+	private static final int POSE_VALUES = 3;
+
+	private final Scenario scenario;
+	private final Path outputDir;
+	private final DriveFSMSystem drivetrain;
+	private final ScriptedTeleopInput input;
+	private final double[] truePose = new double[POSE_VALUES];
+	private final double[] estimatedPose = new double[POSE_VALUES];
+	private double startTime = Double.NaN;
+
+	// Results
+	private long lastLoopNanos = 0;
+	private int loops = 0;
+	private double loopMsSum = 0.0;
+	private double loopMsMax = 0.0;
+	private int poseSamples = 0;
+	private double poseErrorSum = 0.0;
+	private double poseErrorMax = 0.0;
+	private int visionMeasurements = 0;
+	private double visionErrorSum = 0.0;
+	private double visionErrorMax = 0.0;
+
+	/**
+	 * Creates a new ScenarioRunner.
+	 * @param scenarioFile the scenario to run
+	 * @param output the directory to write the summary to
+	 * @param drive the drivetrain to control
+	 */
+	public ScenarioRunner(Path scenarioFile, Path output, DriveFSMSystem drive) {
+		try {
+			this.scenario = Scenario.load(scenarioFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to load scenario " + scenarioFile, e);
+		}
+		this.outputDir = output;
+		this.drivetrain = drive;
+		this.input = new ScriptedTeleopInput(scenario, this::getElapsedSecs);
+
+		Logger.recordMetadata("Scenario", scenario.getName());
+	}
+
+	/**
+	 * Returns the scripted driver inputs to use in place of the controller.
+	 * @return the scripted inputs
+	 */
+	public TeleopInput getInput() {
+		return input;
+	}
+
+	/**
+	 * Wraps a vision consumer so every measurement passed to it is also compared
+	 * against the true pose of the simulated robot.
+	 * @param consumer the consumer to wrap
+	 * @return the recording consumer
+	 */
+	public VisionConsumer wrap(VisionConsumer consumer) {
+		return (x, y, theta, timestampSeconds, xStdDev, yStdDev, thetaStdDev) -> {
+			if (drivetrain.truePoseAt(timestampSeconds, truePose)) {
+				double error = Math.hypot(x - truePose[0], y - truePose[1]);
+				visionMeasurements++;
+				visionErrorSum += error;
+				visionErrorMax = Math.max(visionErrorMax, error);
+			}
+			consumer.accept(x, y, theta, timestampSeconds, xStdDev, yStdDev, thetaStdDev);
+		};
+	}
+
+	/**
+	 * Starts the scenario on the first call, then records loop timing and pose
+	 * error and ends the scenario once its duration has elapsed. Call at the end
+	 * of every robot loop.
+	 */
+	public void periodic() {
+		if (Double.isNaN(startTime)) {
+			start();
+		}
+
+		double timestamp = Timer.getFPGATimestamp();
+		if (drivetrain.poseAt(timestamp, estimatedPose)
+				&& drivetrain.truePoseAt(timestamp, truePose)) {
+			double error = Math.hypot(
+				estimatedPose[0] - truePose[0], estimatedPose[1] - truePose[1]);
+			poseSamples++;
+			poseErrorSum += error;
+			poseErrorMax = Math.max(poseErrorMax, error);
+		}
+
+		long now = System.nanoTime();
+		if (lastLoopNanos != 0) {
+			double loopMs = (now - lastLoopNanos) / NANOS_PER_MILLI;
+			loops++;
+			loopMsSum += loopMs;
+			loopMsMax = Math.max(loopMsMax, loopMs);
+		}
+		lastLoopNanos = now;
+
+		if (getElapsedSecs() >= scenario.getDurationSecs()) {
+			finish();
+		}
+	}
+
+	private void start() {
+		startTime = Timer.getFPGATimestamp();
+		drivetrain.resetPose(scenario.getStartPose());
+
+		DriverStationSim.setDsAttached(true);
+		DriverStationSim.setAutonomous(false);
+		DriverStationSim.setTest(false);
+		DriverStationSim.setEnabled(true);
+		DriverStationSim.notifyNewData();
+	}
+
+	private double getElapsedSecs() {
+		return Double.isNaN(startTime) ? 0.0 : Timer.getFPGATimestamp() - startTime;
+	}
+
+	private void finish() {
+		Properties summary = new Properties();
+		summary.setProperty("name", scenario.getName());
+		summary.setProperty("seed", Long.toString(scenario.getSeed()));
+		summary.setProperty("loops", Integer.toString(loops));
+		summary.setProperty("loopMsMean", Double.toString(loops == 0 ? 0.0 : loopMsSum / loops));
+		summary.setProperty("loopMsMax", Double.toString(loopMsMax));
+		summary.setProperty("poseErrorMean", Double.toString(
+			poseSamples == 0 ? 0.0 : poseErrorSum / poseSamples));
+		summary.setProperty("poseErrorMax", Double.toString(poseErrorMax));
+		summary.setProperty("visionMeasurements", Integer.toString(visionMeasurements));
+		summary.setProperty("visionErrorMean", Double.toString(
+			visionMeasurements == 0 ? 0.0 : visionErrorSum / visionMeasurements));
+		summary.setProperty("visionErrorMax", Double.toString(visionErrorMax));
+		summary.setProperty("finalX", Double.toString(drivetrain.getPose().getX()));
+		summary.setProperty("finalY", Double.toString(drivetrain.getPose().getY()));
+		summary.setProperty("finalHeadingDeg",
+			Double.toString(drivetrain.getPose().getRotation().getDegrees()));
+
+		try {
+			Files.createDirectories(outputDir);
+			try (Writer writer = Files.newBufferedWriter(outputDir.resolve(SUMMARY_FILE))) {
+				summary.store(writer, "Scenario results");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write scenario summary", e);
+		}
+
+		// Close the log before exiting so it is complete
+		Logger.end();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,42 @@
+package frc.robot.sim;
+
+import java.util.function.DoubleSupplier;
+
+import frc.robot.TeleopInput;
+
+/**
+ * Driver inputs played back from a {@link Scenario} script instead of a
+ * controller. The scripted values are logged the same way as controller inputs.
+ */
+final class ScriptedTeleopInput extends TeleopInput {
+	private static final int LEFT_X = 0;
+	private static final int LEFT_Y = 1;
+	private static final int RIGHT_X = 2;
+
+	private final Scenario scenario;
+	private final DoubleSupplier elapsedSecs;
+
+	/**
+	 * Creates a new ScriptedTeleopInput.
+	 * @param script the scenario to play back
+	 * @param elapsed supplier for the time since the scenario started in seconds
+	 */
+	ScriptedTeleopInput(Scenario script, DoubleSupplier elapsed) {
+		this.scenario = script;
+		this.elapsedSecs = elapsed;
+	}
+
+	@Override
+	protected void updateInputs(TeleopInputs values) {
+		double elapsed = elapsedSecs.getAsDouble();
+		values.driveConnected = true;
+		values.driveLeftX = scenario.getAxis(elapsed, LEFT_X);
+		values.driveLeftY = scenario.getAxis(elapsed, LEFT_Y);
+		values.driveRightX = scenario.getAxis(elapsed, RIGHT_X);
+		values.driveRightY = 0.0;
+		values.driveL2 = 0.0;
+		values.driveR2 = 0.0;
+		values.driveButtons = 0;
+		values.drivePov = -1;
+	}
+}
@@ -0,0 +1,199 @@
+package frc.robot.sim;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records of a WPILOG file through a sliding memory-mapped window.
+ *
+ * Only one window of the file is mapped at a time and it moves as records are
+ * read, so memory use does not depend on the size of the log. Reading a record
+ * header leaves its entry, timestamp and payload location in this object instead
+ * of allocating a record, so a whole log can be walked without garbage.
+ */
+final class WpilogFile implements Closeable {
+	/** Entry id of control records. */
+	static final int CONTROL_ENTRY = 0;
+	/** Control record that starts an entry. */
+	static final int CONTROL_START = 0;
+	/** Control record that finishes an entry. */
+	static final int CONTROL_FINISH = 1;
+
+	private static final byte[] MAGIC = "WPILOG".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION_BYTES = 2;
+	private static final long WINDOW_BYTES = 64L << 20;
+	// Record header bitfield: entry id, payload size and timestamp lengths minus one
+	private static final int ENTRY_LENGTH_MASK = 0x3;
+	private static final int SIZE_LENGTH_SHIFT = 2;
+	private static final int SIZE_LENGTH_MASK = 0x3;
+	private static final int TIMESTAMP_LENGTH_SHIFT = 4;
+	private static final int TIMESTAMP_LENGTH_MASK = 0x7;
+	private static final int BYTE_MASK = 0xff;
+	private static final int BITS_PER_BYTE = 8;
+
+	private final FileChannel channel;
+	private final long size;
+	private MappedByteBuffer window;
+	private long windowStart = 0;
+	private long windowEnd = 0;
+
+	// Header of the record last read
+	private int entry;
+	private long timestamp;
+	private long payloadStart;
+	private int payloadSize;
+
+	/**
+	 * Opens a WPILOG file.
+	 * @param file the log file
+	 * @throws IOException if the file cannot be opened
+	 */
+	WpilogFile(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		size = channel.size();
+	}
+
+	/**
+	 * Returns the size of the file.
+	 * @return the size in bytes
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * Checks the file header.
+	 * @return the offset of the first record
+	 * @throws IOException if the file is not a WPILOG file
+	 */
+	long readFileHeader() throws IOException {
+		int fixedLength = MAGIC.length + VERSION_BYTES + Integer.BYTES;
+		ByteBuffer buffer = at(0, fixedLength);
+		for (byte expected : MAGIC) {
+			if (buffer.get() != expected) {
+				throw new IOException("Not a WPILOG file");
+			}
+		}
+		buffer.getShort(); // Version
+		long extraHeaderLength = Integer.toUnsignedLong(buffer.getInt());
+		return fixedLength + extraHeaderLength;
+	}
+
+	/**
+	 * Reads the header of the record at an offset. The entry, timestamp and
+	 * payload are then available from the getters until the next call.
+	 * @param position the offset of the record
+	 * @return the offset of the next record
+	 * @throws IOException if the record runs past the end of the file
+	 */
+	long readHeader(long position) throws IOException {
+		int bits = at(position, 1).get() & BYTE_MASK;
+		int entryLength = (bits & ENTRY_LENGTH_MASK) + 1;
+		int sizeLength = (bits >> SIZE_LENGTH_SHIFT & SIZE_LENGTH_MASK) + 1;
+		int timestampLength = (bits >> TIMESTAMP_LENGTH_SHIFT & TIMESTAMP_LENGTH_MASK) + 1;
+		int headerLength = 1 + entryLength + sizeLength + timestampLength;
+
+		ByteBuffer buffer = at(position + 1, headerLength - 1);
+		entry = (int) readUnsigned(buffer, entryLength);
+		payloadSize = (int) readUnsigned(buffer, sizeLength);
+		timestamp = readUnsigned(buffer, timestampLength);
+		payloadStart = position + headerLength;
+		if (payloadStart + payloadSize > size) {
+			throw new EOFException("Truncated record at " + position);
+		}
+		return payloadStart + payloadSize;
+	}
+
+	/**
+	 * Returns the entry id of the record last read.
+	 * @return the entry id
+	 */
+	int getEntry() {
+		return entry;
+	}
+
+	/**
+	 * Returns the timestamp of the record last read.
+	 * @return the timestamp in microseconds
+	 */
+	long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the payload of the record last read. The buffer is only valid
+	 * until the next read.
+	 * @return the mapped payload, positioned at its first byte and limited to
+	 *		its last
+	 * @throws IOException if the payload cannot be mapped
+	 */
+	ByteBuffer payload() throws IOException {
+		ByteBuffer buffer = at(payloadStart, payloadSize);
+		buffer.limit(buffer.position() + payloadSize);
+		return buffer;
+	}
+
+	/**
+	 * Returns the payload size of the record last read.
+	 * @return the payload size in bytes
+	 */
+	int getPayloadSize() {
+		return payloadSize;
+	}
+
+	/**
+	 * Reads a string as stored in control records, a 32-bit length followed by
+	 * UTF-8 bytes.
+	 * @param buffer the buffer to read from
+	 * @return the string
+	 */
+	static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Maps the window holding a range of the file if it is not already mapped.
+	 * @param position the offset of the range
+	 * @param length the length of the range
+	 * @return the window, positioned at the offset
+	 * @throws IOException if the range runs past the end of the file
+	 */
+	private ByteBuffer at(long position, int length) throws IOException {
+		if (position + length > size) {
+			throw new EOFException("Read past the end of the log at " + position);
+		}
+		if (position < windowStart || position + length > windowEnd) {
+			long mapLength = Math.min(size - position, Math.max(WINDOW_BYTES, length));
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, mapLength);
+			window.order(ByteOrder.LITTLE_ENDIAN);
+			windowStart = position;
+			windowEnd = position + mapLength;
+		}
+		window.limit(window.capacity());
+		window.position((int) (position - windowStart));
+		return window;
+	}
+
+	private static long readUnsigned(ByteBuffer buffer, int length) {
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value |= (long) (buffer.get() & BYTE_MASK) << (i * BITS_PER_BYTE);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,233 @@
+package frc.robot.sim;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Random access to a WPILOG file through the sidecar index written by
+ * {@link WpilogIndexer}.
+ *
+ * Only the directory of keys is loaded when the index is opened. A query reads
+ * the blocks of one key that overlap the requested time range and decodes only
+ * the records in it, so finding a key or time range in a large log does not
+ * touch unrelated records.
+ */
+public final class WpilogIndex implements Closeable {
+	private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+	// Fields of a block table entry
+	private static final int BLOCK_POSITION = 0;
+	private static final int BLOCK_COUNT = 1;
+	private static final int BLOCK_FIRST = 2;
+	private static final int BLOCK_LAST = 3;
+	private static final int BLOCK_FIELDS = 4;
+
+	private final WpilogFile file;
+	private final FileChannel indexChannel;
+	private final Map<String, Key> keys = new LinkedHashMap<>();
+	private final ByteBuffer blockBuffer = ByteBuffer.allocate(
+		Integer.BYTES + 2 * Long.BYTES * WpilogIndexer.BLOCK_RECORDS);
+
+	/** The directory entry for one key. */
+	private static final class Key {
+		private final String type;
+		private final long records;
+		private final long[][] blocks;
+
+		private Key(String keyType, long recordCount, long[][] blockTable) {
+			this.type = keyType;
+			this.records = recordCount;
+			this.blocks = blockTable;
+		}
+	}
+
+	/**
+	 * Receives records found by a query.
+	 */
+	@FunctionalInterface
+	public interface RecordVisitor {
+		/**
+		 * Handle one record.
+		 * @param timestamp the record's timestamp in microseconds
+		 * @param payload the record's payload, only valid during this call
+		 * @throws IOException if the visitor cannot handle the record
+		 */
+		void accept(long timestamp, ByteBuffer payload) throws IOException;
+	}
+
+	private WpilogIndex(Path log, Path index) throws IOException {
+		file = new WpilogFile(log);
+		try {
+			indexChannel = FileChannel.open(index, StandardOpenOption.READ);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		try {
+			readDirectory(index);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Loads the key directory.
+	 * @param index the index file, for error messages
+	 * @throws IOException if the index cannot be read or does not match the log
+	 */
+	private void readDirectory(Path index) throws IOException {
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+		indexChannel.read(trailer, indexChannel.size() - TRAILER_BYTES);
+		trailer.flip();
+		long directoryPosition = trailer.getLong();
+		if (trailer.getInt() != WpilogIndexer.MAGIC) {
+			throw new IOException("Not a WPILOG index: " + index);
+		}
+
+		indexChannel.position(directoryPosition);
+		DataInputStream in = new DataInputStream(
+			new BufferedInputStream(Channels.newInputStream(indexChannel)));
+		if (in.readLong() != file.size()) {
+			throw new IOException("Index is out of date: " + index);
+		}
+		int keyCount = in.readInt();
+		for (int i = 0; i < keyCount; i++) {
+			String name = in.readUTF();
+			String type = in.readUTF();
+			long records = in.readLong();
+			long[][] blocks = new long[in.readInt()][BLOCK_FIELDS];
+			for (long[] block : blocks) {
+				for (int field = 0; field < BLOCK_FIELDS; field++) {
+					block[field] = in.readLong();
+				}
+			}
+			keys.put(name, new Key(type, records, blocks));
+		}
+	}
+
+	/**
+	 * Opens the index of a log, building it first if it is missing or was built
+	 * from a different version of the log.
+	 * @param log the log file
+	 * @return the index
+	 * @throws IOException if the log or index cannot be read
+	 */
+	public static WpilogIndex open(Path log) throws IOException {
+		Path index = WpilogIndexer.indexPath(log);
+		if (Files.exists(index)) {
+			try {
+				return new WpilogIndex(log, index);
+			} catch (IOException e) {
+				System.out.println("Rebuilding index of " + log + ": " + e.getMessage());
+			}
+		}
+		return new WpilogIndex(log, WpilogIndexer.index(log));
+	}
+
+	/**
+	 * Returns every key in the log, in the order they were first logged.
+	 * @return the keys
+	 */
+	public Set<String> getKeys() {
+		return Collections.unmodifiableSet(keys.keySet());
+	}
+
+	/**
+	 * Returns the type string of a key, such as double or struct:Pose3d[].
+	 * @param key the key
+	 * @return the type, or null if the key is not in the log
+	 */
+	public String getType(String key) {
+		Key entry = keys.get(key);
+		return entry == null ? null : entry.type;
+	}
+
+	/**
+	 * Returns how many records a key has.
+	 * @param key the key
+	 * @return the record count, or 0 if the key is not in the log
+	 */
+	public long getRecordCount(String key) {
+		Key entry = keys.get(key);
+		return entry == null ? 0 : entry.records;
+	}
+
+	/**
+	 * Visits every record of a key in a time range, in log order.
+	 * @param key the key
+	 * @param startTimestamp the start of the range in microseconds, inclusive
+	 * @param endTimestamp the end of the range in microseconds, inclusive
+	 * @param visitor receives each record
+	 * @return the number of records visited
+	 * @throws IOException if the log or index cannot be read
+	 */
+	public int forEachRecord(
+			String key,
+			long startTimestamp,
+			long endTimestamp,
+			RecordVisitor visitor) throws IOException {
+		Key entry = keys.get(key);
+		if (entry == null) {
+			return 0;
+		}
+
+		int visited = 0;
+		for (long[] block : entry.blocks) {
+			if (block[BLOCK_LAST] < startTimestamp || block[BLOCK_FIRST] > endTimestamp) {
+				continue;
+			}
+			int count = (int) block[BLOCK_COUNT];
+			readBlock(block[BLOCK_POSITION], count);
+			int timestampsStart = Integer.BYTES + Long.BYTES * count;
+			for (int i = 0; i < count; i++) {
+				long timestamp = blockBuffer.getLong(timestampsStart + i * Long.BYTES);
+				if (timestamp < startTimestamp || timestamp > endTimestamp) {
+					continue;
+				}
+				file.readHeader(blockBuffer.getLong(Integer.BYTES + i * Long.BYTES));
+				visitor.accept(timestamp, file.payload());
+				visited++;
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Visits every record of a key.
+	 * @param key the key
+	 * @param visitor receives each record
+	 * @return the number of records visited
+	 * @throws IOException if the log or index cannot be read
+	 */
+	public int forEachRecord(String key, RecordVisitor visitor) throws IOException {
+		return forEachRecord(key, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+		indexChannel.close();
+	}
+
+	private void readBlock(long position, int count) throws IOException {
+		blockBuffer.clear();
+		blockBuffer.limit(Integer.BYTES + 2 * Long.BYTES * count);
+		while (blockBuffer.hasRemaining()) {
+			if (indexChannel.read(blockBuffer, position + blockBuffer.position()) < 0) {
+				throw new IOException("Truncated index block at " + position);
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package frc.robot.sim;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the sidecar index read by {@link WpilogIndex} for a WPILOG file.
+ *
+ * The log is streamed once through {@link WpilogFile}. Each key's record offsets
+ * and timestamps are collected in a fixed-size block that is written to the
+ * index as soon as it fills. Memory use therefore grows with the number of keys,
+ * not the size of the log.
+ *
+ * The index holds the blocks, then a directory of keys with their block tables,
+ * and ends with the directory's offset and a magic number.
+ *
+ * Usage: WpilogIndexer log...
+ */
+public final class WpilogIndexer {
+	/** Records per key block. */
+	static final int BLOCK_RECORDS = 512;
+	/** Last field of an index file. */
+	static final int MAGIC = 0x57504958; // WPIX
+	/** Extension added to the log file name for its index. */
+	static final String INDEX_EXTENSION = ".idx";
+
+	private static final long NANOS_PER_MILLI = 1_000_000;
+
+	/** Everything indexed for one key. */
+	private static final class KeyIndex {
+		private final String name;
+		private final String type;
+		private final long[] offsets = new long[BLOCK_RECORDS];
+		private final long[] timestamps = new long[BLOCK_RECORDS];
+		private int pending = 0;
+		private long records = 0;
+
+		// Block table: each block's index offset, record count and first and last timestamp
+		private final List<long[]> blocks = new ArrayList<>();
+
+		private KeyIndex(String keyName, String keyType) {
+			this.name = keyName;
+			this.type = keyType;
+		}
+	}
+
+	private WpilogIndexer() {
+	}
+
+	/**
+	 * Indexes every log given.
+	 * @param args the log files
+	 * @throws IOException if a log cannot be read or its index written
+	 */
+	public static void main(String... args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: WpilogIndexer log...");
+			System.exit(1);
+		}
+		for (String arg : args) {
+			long start = System.nanoTime();
+			Path index = index(Path.of(arg));
+			System.out.printf("Indexed %s in %d ms%n",
+				index, (System.nanoTime() - start) / NANOS_PER_MILLI);
+		}
+	}
+
+	/**
+	 * Returns where the index of a log is stored.
+	 * @param log the log file
+	 * @return the index file beside it
+	 */
+	public static Path indexPath(Path log) {
+		return log.resolveSibling(log.getFileName() + INDEX_EXTENSION);
+	}
+
+	/**
+	 * Indexes a log, writing the index beside it.
+	 * @param log the log file
+	 * @return the index file
+	 * @throws IOException if the log cannot be read or the index written
+	 */
+	public static Path index(Path log) throws IOException {
+		Path indexFile = indexPath(log);
+		Path partial = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+		try (WpilogFile file = new WpilogFile(log);
+				OutputStream stream = Files.newOutputStream(partial);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			// Keys by name in the order they started, and the key each live entry id writes to
+			Map<String, KeyIndex> keys = new LinkedHashMap<>();
+			Map<Integer, KeyIndex> entries = new HashMap<>();
+			long written = 0;
+
+			long position = file.readFileHeader();
+			while (position < file.size()) {
+				long recordStart = position;
+				position = file.readHeader(recordStart);
+
+				if (file.getEntry() == WpilogFile.CONTROL_ENTRY) {
+					ByteBuffer payload = file.payload();
+					int controlType = payload.get();
+					int entry = payload.getInt();
+					if (controlType == WpilogFile.CONTROL_START) {
+						String name = WpilogFile.readString(payload);
+						String type = WpilogFile.readString(payload);
+						KeyIndex started =
+							keys.computeIfAbsent(name, keyName -> new KeyIndex(keyName, type));
+						entries.put(entry, started);
+					} else if (controlType == WpilogFile.CONTROL_FINISH) {
+						entries.remove(entry);
+					}
+					continue;
+				}
+
+				KeyIndex key = entries.get(file.getEntry());
+				if (key == null) {
+					continue; // Data for an entry that was never started
+				}
+				key.offsets[key.pending] = recordStart;
+				key.timestamps[key.pending] = file.getTimestamp();
+				key.pending++;
+				key.records++;
+				if (key.pending == BLOCK_RECORDS) {
+					written += writeBlock(out, key, written);
+				}
+			}
+
+			for (KeyIndex key : keys.values()) {
+				if (key.pending > 0) {
+					written += writeBlock(out, key, written);
+				}
+			}
+			writeDirectory(out, file.size(), keys);
+			out.writeLong(written);
+			out.writeInt(MAGIC);
+		}
+
+		Files.move(partial, indexFile, StandardCopyOption.REPLACE_EXISTING);
+		return indexFile;
+	}
+
+	/**
+	 * Writes a key's pending records as a block and adds it to the key's block
+	 * table.
+	 * @param out the index being written
+	 * @param key the key
+	 * @param position the offset the block is written at
+	 * @return the number of bytes written
+	 * @throws IOException if the index cannot be written
+	 */
+	private static long writeBlock(DataOutputStream out, KeyIndex key, long position)
+			throws IOException {
+		int count = key.pending;
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeLong(key.offsets[i]);
+		}
+		for (int i = 0; i < count; i++) {
+			out.writeLong(key.timestamps[i]);
+		}
+
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			first = Math.min(first, key.timestamps[i]);
+			last = Math.max(last, key.timestamps[i]);
+		}
+		key.blocks.add(new long[] {position, count, first, last});
+		key.pending = 0;
+		return Integer.BYTES + 2L * Long.BYTES * count;
+	}
+
+	private static void writeDirectory(
+			DataOutputStream out,
+			long logSize,
+			Map<String, KeyIndex> keys) throws IOException {
+		out.writeLong(logSize);
+		out.writeInt(keys.size());
+		for (KeyIndex key : keys.values()) {
+			out.writeUTF(key.name);
+			out.writeUTF(key.type);
+			out.writeLong(key.records);
+			out.writeInt(key.blocks.size());
+			for (long[] block : key.blocks) {
+				for (long field : block) {
+					out.writeLong(field);
+				}
+			}
+		}
+	}
+}
@@ -3,7 +3,9 @@ package frc.robot.systems;
 import static edu.wpi.first.units.Units.MetersPerSecond;
 import static edu.wpi.first.units.Units.RadiansPerSecond;
 
+import org.littletonrobotics.junction.AutoLog;
 import org.littletonrobotics.junction.AutoLogOutput;
+import org.littletonrobotics.junction.Logger;
 
 import com.ctre.phoenix6.swerve.SwerveModule.DriveRequestType;
 import com.ctre.phoenix6.swerve.SwerveRequest;
@@ -21,15 +23,30 @@ import frc.robot.CommandSwerveDrivetrain;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.TeleopInput;
 import frc.robot.TunerConstants;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.OdometrySampleBuffer;
+import frc.robot.util.PoseHistory;
 
 public class DriveFSMSystem extends FSMSystem<DriveFSMSystem.DriveFSMState> {
 	public enum DriveFSMState {
 		TELEOP
 	}
 
+	/**
+	 * Drivetrain state read by other systems' decisions, logged as an input so a
+	 * replay sees the values from the match instead of the simulated drivetrain.
+	 */
+	@AutoLog
+	public static class DriveStateInputs {
+		public double vxMetersPerSec = 0.0;
+		public double vyMetersPerSec = 0.0;
+		public double omegaRadPerSec = 0.0;
+	}
+
 	private static final LinearVelocity MAX_SPEED = TunerConstants.SPEED_AT_12_VOLTS;
 		// kSpeedAt12Volts desired top speed
 	private static final AngularVelocity MAX_ANGULAR_RATE = DriveConstants.MAX_ANGULAR_VELO_RPS;
+	private static final double NANOS_PER_MILLI = 1e6;
 
 	private final SwerveRequest.FieldCentric drive
 		= new SwerveRequest.FieldCentric()
@@ -41,43 +58,112 @@ public class DriveFSMSystem extends FSMSystem<DriveFSMSystem.DriveFSMState> {
 
 	private static CommandSwerveDrivetrain drivetrain;
 
+	private final DriveStateSnapshot snapshot;
+	private final DriveStateInputsAutoLogged stateInputs = new DriveStateInputsAutoLogged();
+	private final ChassisSpeeds loggedSpeeds = new ChassisSpeeds();
+	private final PoseHistory poseHistory = new PoseHistory(DriveConstants.POSE_HISTORY_SAMPLES);
+	// Where the simulated robot really is, empty on a real robot
+	private final PoseHistory truePoseHistory =
+		new PoseHistory(DriveConstants.POSE_HISTORY_SAMPLES);
+
+	// Module states are logged through the log policy, which may decimate them
+	private final LogPolicy.Channel measuredStatesChannel =
+		LogPolicy.channel("Swerve/States/Measured");
+	private final LogPolicy.Channel targetStatesChannel =
+		LogPolicy.channel("Swerve/States/Targets");
+
 	/**
 	 * Create DriveFSMSystem and initialize to starting state. Also perform any
 	 */
 	public DriveFSMSystem() {
+		super("Drive", DriveFSMState.class);
+		addState(DriveFSMState.TELEOP, this::handleTeleopState, input -> DriveFSMState.TELEOP);
 		setCurrentState(DriveFSMState.TELEOP);
 
 		drivetrain = TunerConstants.createDrivetrain();
 
+		snapshot = new DriveStateSnapshot(drivetrain.getModules().length);
+		drivetrain.setStateConsumer(snapshot::publish);
+		periodic();
+	}
+
+	/**
+	 * Captures the drivetrain state for this cycle and logs the module states.
+	 * Call once per loop before anything reads the pose, speeds or module states.
+	 */
+	public void periodic() {
+		snapshot.capture();
+		updateStateInputs();
+		drainOdometrySamples();
+		measuredStatesChannel.record(getModuleStates());
+		targetStatesChannel.record(getModuleTargets());
+	}
+
+	/**
+	 * Advances the simulated drivetrain by one robot loop and samples its odometry.
+	 * Only used by lockstep simulation, where the drivetrain has no sim or odometry
+	 * thread of its own.
+	 * @param loopPeriod the simulated time to advance in seconds
+	 * @param substeps the number of equal physics steps to split the loop into
+	 */
+	public void stepSim(double loopPeriod, int substeps) {
+		drivetrain.stepSim(loopPeriod, substeps);
 	}
 
 	@Override
 	public void reset() {
-		setCurrentState(DriveFSMState.TELEOP);
+		setCurrentState(DriveFSMState.TELEOP, true);
 
 		update(null);
 	}
 
-	@Override
-	public void update(TeleopInput input) {
-		switch (getCurrentState()) {
-			case TELEOP:
-				handleTeleopState(input);
-				break;
-			default:
-				throw new IllegalStateException("Invalid state: " + getCurrentState().toString());
-		}
-		setCurrentState(nextState(input));
+	/**
+	 * Logs the captured speeds as inputs. When replaying a log, the logged
+	 * values replace the captured ones.
+	 */
+	private void updateStateInputs() {
+		ChassisSpeeds speeds = snapshot.get().Speeds;
+		stateInputs.vxMetersPerSec = speeds.vxMetersPerSecond;
+		stateInputs.vyMetersPerSec = speeds.vyMetersPerSecond;
+		stateInputs.omegaRadPerSec = speeds.omegaRadiansPerSecond;
+		Logger.processInputs("Drive/State", stateInputs);
 
+		loggedSpeeds.vxMetersPerSecond = stateInputs.vxMetersPerSec;
+		loggedSpeeds.vyMetersPerSecond = stateInputs.vyMetersPerSec;
+		loggedSpeeds.omegaRadiansPerSecond = stateInputs.omegaRadPerSec;
 	}
 
-	@Override
-	protected DriveFSMState nextState(TeleopInput input) {
-		switch (getCurrentState()) {
-			case TELEOP:
-				return DriveFSMState.TELEOP;
-			default:
-				throw new IllegalStateException("Invalid state: " + getCurrentState().toString());
+	/**
+	 * Drains the odometry samples captured since the last cycle into the pose
+	 * history and logs them as timestamped arrays. In simulation the true poses
+	 * sampled with them go into their own history.
+	 */
+	private void drainOdometrySamples() {
+		OdometrySampleBuffer samples = drivetrain.getOdometrySamples();
+		samples.drain();
+		poseHistory.addAll(
+			samples.getTimestamps(),
+			samples.getXs(),
+			samples.getYs(),
+			samples.getThetas());
+
+		// The logger keeps arrays by reference, which the alternating batches allow
+		Logger.recordOutput("Swerve/Odometry/Timestamps", samples.getTimestamps());
+		Logger.recordOutput("Swerve/Odometry/X", samples.getXs());
+		Logger.recordOutput("Swerve/Odometry/Y", samples.getYs());
+		Logger.recordOutput("Swerve/Odometry/Theta", samples.getThetas());
+		Logger.recordOutput("Swerve/Odometry/VX", samples.getVxs());
+		Logger.recordOutput("Swerve/Odometry/VY", samples.getVys());
+		Logger.recordOutput("Swerve/Odometry/Omega", samples.getOmegas());
+		Logger.recordOutput("Swerve/Odometry/ModuleSpeeds", samples.getModuleSpeeds());
+		Logger.recordOutput("Swerve/Odometry/ModuleAngles", samples.getModuleAngles());
+		Logger.recordOutput("Swerve/Odometry/Dropped", samples.getDroppedCount());
+
+		OdometrySampleBuffer truth = drivetrain.getTruthSamples();
+		if (truth != null) {
+			truth.drain();
+			truePoseHistory.addAll(
+				truth.getTimestamps(), truth.getXs(), truth.getYs(), truth.getThetas());
 		}
 	}
 
@@ -115,7 +201,18 @@ public class DriveFSMSystem extends FSMSystem<DriveFSMSystem.DriveFSMState> {
 	 */
 	@AutoLogOutput(key = "Swerve/Drivetrain Pose")
 	public Pose2d getPose() {
-		return drivetrain.getState().Pose;
+		return snapshot.get().Pose;
+	}
+
+	/**
+	 * Reset the robot pose. The pose history is cleared, since poses from before
+	 * the reset no longer describe where the robot was.
+	 * @param pose the new robot pose
+	 */
+	public void resetPose(Pose2d pose) {
+		drivetrain.resetPose(pose);
+		poseHistory.clear();
+		truePoseHistory.clear();
 	}
 
 	/**
@@ -124,25 +221,118 @@ public class DriveFSMSystem extends FSMSystem<DriveFSMSystem.DriveFSMState> {
 	 */
 	@AutoLogOutput(key = "Swerve/Chassis Speeds")
 	public ChassisSpeeds getChassisSpeeds() {
-		return drivetrain.getState().Speeds;
+		return snapshot.get().Speeds;
+	}
+
+	/**
+	 * Get the chassis speeds logged as inputs this cycle. Matches
+	 * {@link #getChassisSpeeds()} on the robot, but comes from the log when
+	 * replaying, so use it for decisions that must replay the same way.
+	 * @return the logged chassis speeds, must not be modified
+	 */
+	public ChassisSpeeds getLoggedChassisSpeeds() {
+		return loggedSpeeds;
 	}
 
 	/**
 	 * Get the drivetrain states.
 	 * @return the swerve module states
 	 */
-	@AutoLogOutput(key = "Swerve/States/Measured")
 	public SwerveModuleState[] getModuleStates() {
-		return drivetrain.getState().ModuleStates;
+		return snapshot.get().ModuleStates;
 	}
 
 	/**
 	 * Get the drivetrain targets.
 	 * @return drivetrain targets
 	 */
-	@AutoLogOutput(key = "Swerve/States/Targets")
 	public SwerveModuleState[] getModuleTargets() {
-		return drivetrain.getState().ModuleTargets;
+		return snapshot.get().ModuleTargets;
+	}
+
+	/**
+	 * Finds the robot pose at a past time from the odometry samples of the last
+	 * two seconds, interpolating between samples. Only valid on the main loop
+	 * thread.
+	 * @param timestamp the FPGA timestamp to look up in seconds
+	 * @param out array of at least three elements to receive x, y and heading in
+	 *		meters and radians
+	 * @return true if a pose was written to out
+	 */
+	public boolean poseAt(double timestamp, double[] out) {
+		return poseHistory.poseAt(timestamp, out);
+	}
+
+	/**
+	 * Finds where the simulated robot really was at a past time, unlike
+	 * {@link #poseAt(double, double[])}, which returns the vision-corrected
+	 * estimate. Only valid on the main loop thread, and never finds a pose on a
+	 * real robot.
+	 * @param timestamp the FPGA timestamp to look up in seconds
+	 * @param out array of at least three elements to receive x, y and heading in
+	 *		meters and radians
+	 * @return true if a pose was written to out
+	 */
+	public boolean truePoseAt(double timestamp, double[] out) {
+		return truePoseHistory.poseAt(timestamp, out);
+	}
+
+	/**
+	 * Get the number of vision measurements waiting for the drivetrain's vision thread.
+	 * @return the vision queue depth
+	 */
+	@AutoLogOutput(key = "Swerve/VisionQueue/Depth")
+	public int getVisionQueueDepth() {
+		return drivetrain.getVisionQueueDepth();
+	}
+
+	/**
+	 * Get the number of vision measurements dropped because the queue was full.
+	 * @return the number of dropped measurements
+	 */
+	@AutoLogOutput(key = "Swerve/VisionQueue/Dropped")
+	public long getVisionQueueDropped() {
+		return drivetrain.getVisionQueueDropped();
+	}
+
+	/**
+	 * Get how long the drivetrain's vision thread last spent applying vision measurements,
+	 * including the wait for the drivetrain state lock.
+	 * @return the apply time in milliseconds
+	 */
+	@AutoLogOutput(key = "Swerve/VisionQueue/ApplyMs")
+	public double getVisionApplyMs() {
+		return drivetrain.getLastVisionApplyNanos() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Adds a new timestamped vision measurement. The measurement is queued and
+	 * applied by the drivetrain's vision thread, so this never blocks on the drivetrain.
+	 *
+	 * @param x                The robot X position in meters
+	 * @param y                The robot Y position in meters
+	 * @param theta            The robot heading in radians
+	 * @param timestampSeconds The timestamp of the measurement
+	 * @param xStdDev          The X standard deviation in meters
+	 * @param yStdDev          The Y standard deviation in meters
+	 * @param thetaStdDev      The heading standard deviation in radians
+	 */
+	public void addVisionMeasurement(
+			double x,
+			double y,
+			double theta,
+			double timestampSeconds,
+			double xStdDev,
+			double yStdDev,
+			double thetaStdDev) {
+		drivetrain.addVisionMeasurement(
+				x,
+				y,
+				theta,
+				timestampSeconds,
+				xStdDev,
+				yStdDev,
+				thetaStdDev);
 	}
 
 	/**
@@ -0,0 +1,33 @@
+package frc.robot.systems;
+
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+public class DriveStateInputsAutoLogged extends
+	DriveFSMSystem.DriveStateInputs implements LoggableInputs, Cloneable {
+	@Override
+	public void toLog(LogTable table) {
+		table.put("VxMetersPerSec", vxMetersPerSec);
+		table.put("VyMetersPerSec", vyMetersPerSec);
+		table.put("OmegaRadPerSec", omegaRadPerSec);
+	}
+
+	@Override
+	public void fromLog(LogTable table) {
+		vxMetersPerSec = table.get("VxMetersPerSec", vxMetersPerSec);
+		vyMetersPerSec = table.get("VyMetersPerSec", vyMetersPerSec);
+		omegaRadPerSec = table.get("OmegaRadPerSec", omegaRadPerSec);
+	}
+
+	/**
+	 * Creates and returns a copy of this object.
+	 * @return A copy of this object.
+	 */
+	public DriveStateInputsAutoLogged clone() {
+		DriveStateInputsAutoLogged copy = new DriveStateInputsAutoLogged();
+		copy.vxMetersPerSec = this.vxMetersPerSec;
+		copy.vyMetersPerSec = this.vyMetersPerSec;
+		copy.omegaRadPerSec = this.omegaRadPerSec;
+		return copy;
+	}
+}
@@ -0,0 +1,114 @@
+package frc.robot.systems;
+
+import java.util.concurrent.locks.StampedLock;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * One copy of the drivetrain state per robot cycle.
+ *
+ * The drivetrain publishes every new state into a preallocated pending copy from
+ * its telemetry callback, which Phoenix calls while holding its state lock, so a
+ * published copy always comes from a single odometry sample. Once per cycle the
+ * main loop captures the pending copy into a second preallocated
+ * {@link SwerveDriveState} that every getter reads from, instead of each getter
+ * copying the state out of the drivetrain. A {@link StampedLock} keeps a capture
+ * from seeing a half-published state.
+ */
+final class DriveStateSnapshot {
+	private final SwerveDriveState pending;
+	private final SwerveDriveState state;
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Creates a new DriveStateSnapshot.
+	 * @param moduleCount the number of swerve modules
+	 */
+	DriveStateSnapshot(int moduleCount) {
+		pending = newState(moduleCount);
+		state = newState(moduleCount);
+	}
+
+	/**
+	 * Copies a drivetrain state into the pending copy. Called from the drivetrain's
+	 * telemetry callback, or from the robot loop in lockstep simulation.
+	 * @param source the drivetrain state to copy
+	 */
+	void publish(SwerveDriveState source) {
+		long stamp = lock.writeLock();
+		try {
+			copy(source, pending);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Captures the latest published state into the snapshot. Only called from the
+	 * main loop.
+	 */
+	void capture() {
+		long stamp = lock.readLock();
+		try {
+			copy(pending, state);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns the snapshot. Only valid on the main loop thread, and must not be
+	 * modified.
+	 * @return the captured drivetrain state
+	 */
+	SwerveDriveState get() {
+		return state;
+	}
+
+	private static SwerveDriveState newState(int moduleCount) {
+		SwerveDriveState created = new SwerveDriveState();
+		created.Pose = Pose2d.kZero;
+		created.Speeds = new ChassisSpeeds();
+		created.RawHeading = Rotation2d.kZero;
+		created.ModuleStates = new SwerveModuleState[moduleCount];
+		created.ModuleTargets = new SwerveModuleState[moduleCount];
+		created.ModulePositions = new SwerveModulePosition[moduleCount];
+		for (int i = 0; i < moduleCount; i++) {
+			created.ModuleStates[i] = new SwerveModuleState();
+			created.ModuleTargets[i] = new SwerveModuleState();
+			created.ModulePositions[i] = new SwerveModulePosition();
+		}
+		return created;
+	}
+
+	private static void copy(SwerveDriveState source, SwerveDriveState target) {
+		// Poses and rotations are immutable, so they can be shared
+		target.Pose = source.Pose;
+		target.RawHeading = source.RawHeading;
+		target.Timestamp = source.Timestamp;
+		target.OdometryPeriod = source.OdometryPeriod;
+		target.SuccessfulDaqs = source.SuccessfulDaqs;
+		target.FailedDaqs = source.FailedDaqs;
+
+		target.Speeds.vxMetersPerSecond = source.Speeds.vxMetersPerSecond;
+		target.Speeds.vyMetersPerSecond = source.Speeds.vyMetersPerSecond;
+		target.Speeds.omegaRadiansPerSecond = source.Speeds.omegaRadiansPerSecond;
+
+		for (int i = 0; i < target.ModuleStates.length; i++) {
+			target.ModuleStates[i].speedMetersPerSecond =
+				source.ModuleStates[i].speedMetersPerSecond;
+			target.ModuleStates[i].angle = source.ModuleStates[i].angle;
+			target.ModuleTargets[i].speedMetersPerSecond =
+				source.ModuleTargets[i].speedMetersPerSecond;
+			target.ModuleTargets[i].angle = source.ModuleTargets[i].angle;
+			target.ModulePositions[i].distanceMeters = source.ModulePositions[i].distanceMeters;
+			target.ModulePositions[i].angle = source.ModulePositions[i].angle;
+		}
+	}
+}
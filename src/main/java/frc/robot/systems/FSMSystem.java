@@ -1,5 +1,7 @@
 package frc.robot.systems;
 
+import org.littletonrobotics.junction.Logger;
+
 import frc.robot.TeleopInput;
 
 /**
@@ -16,15 +18,104 @@ import frc.robot.TeleopInput;
  *
  * Your compiler / IDE will tell you what methods you need to implement
  * You should also have state handlers shown in the example
+ *
+ * Each state registers its handler and transition function in the constructor
+ * with {@link #addState}, and optionally entry and exit hooks with
+ * {@link #onEntry} and {@link #onExit}. These are stored in arrays indexed by
+ * the state's ordinal, so dispatching a tick is an array read. The engine logs
+ * the current state, how long each state's handler took, how long the FSM has
+ * spent in each state and how many times each state was entered under FSM/name.
+ * A state's counters are only logged on ticks where they can change, so each
+ * tick logs a handful of values however many states the FSM has.
  * @param <S> the type of state
  */
-public abstract class FSMSystem<S> {
+public abstract class FSMSystem<S extends Enum<S>> {
+	private static final double MICROS_PER_SECOND = 1e6;
+	// Gaps between updates longer than this, such as while disabled, are not
+	// counted as time in a state
+	private static final long MAX_TICK_GAP_MICROS = 100_000;
+
+	/**
+	 * Runs the outputs of a state for one tick.
+	 */
+	@FunctionalInterface
+	protected interface StateHandler {
+		/**
+		 * Handle one tick of the state.
+		 * @param input Global TeleopInput if robot in teleop mode or null if
+		 *		the robot is in autonomous mode.
+		 */
+		void handle(TeleopInput input);
+	}
+
+	/**
+	 * Decides the state to go to after a state's handler runs.
+	 * @param <S> the type of state
+	 */
+	@FunctionalInterface
+	protected interface Transition<S> {
+		/**
+		 * Decide the next state. Should not have side effects on outputs.
+		 * @param input Global TeleopInput if robot in teleop mode or null if
+		 *		the robot is in autonomous mode.
+		 * @return FSM state for the next iteration
+		 */
+		S next(TeleopInput input);
+	}
 
 	/**
 	 * the current state, defined as part of the provided statespace.
 	 */
 	private S currentState;
 
+	// State tables, indexed by ordinal
+	private final S[] states;
+	private final StateHandler[] handlers;
+	private final Transition<S>[] transitions;
+	private final Runnable[] entryHooks;
+	private final Runnable[] exitHooks;
+
+	// Metrics, indexed by ordinal
+	private final long[] timeInStateMicros;
+	private final long[] entryCounts;
+	private long transitionCount = 0;
+	private long lastUpdateMicros = -1;
+
+	// Log keys, built once
+	private final String stateKey;
+	private final String[] handlerNsKeys;
+	private final String transitionsKey;
+	private final String[] timeInStateKeys;
+	private final String[] entryCountKeys;
+
+	/**
+	 * Create the state tables for an FSM.
+	 * @param name the name to log the FSM's metrics under
+	 * @param stateClass the enum of the FSM's states
+	 */
+	@SuppressWarnings("unchecked")
+	protected FSMSystem(String name, Class<S> stateClass) {
+		states = stateClass.getEnumConstants();
+		handlers = new StateHandler[states.length];
+		transitions = (Transition<S>[]) new Transition<?>[states.length];
+		entryHooks = new Runnable[states.length];
+		exitHooks = new Runnable[states.length];
+		timeInStateMicros = new long[states.length];
+		entryCounts = new long[states.length];
+
+		String prefix = "FSM/" + name + "/";
+		stateKey = prefix + "State";
+		transitionsKey = prefix + "Transitions";
+		timeInStateKeys = new String[states.length];
+		entryCountKeys = new String[states.length];
+		handlerNsKeys = new String[states.length];
+		for (S state : states) {
+			timeInStateKeys[state.ordinal()] = prefix + state.name() + "/TimeSecs";
+			entryCountKeys[state.ordinal()] = prefix + state.name() + "/Entries";
+			handlerNsKeys[state.ordinal()] = prefix + state.name() + "/HandlerNs";
+		}
+	}
+
 	/**
 	 * Return current FSM state.
 	 * @return Current FSM state
@@ -34,11 +125,69 @@ public abstract class FSMSystem<S> {
 	}
 
 	/**
-	 * Sets the current state.
+	 * Sets the current state, running the exit hook of the old state and the
+	 * entry hook of the new one if the state changes.
 	 * @param newState the new state
 	 */
 	protected void setCurrentState(S newState) {
+		setCurrentState(newState, false);
+	}
+
+	/**
+	 * Sets the current state, running the exit hook of the old state and the
+	 * entry hook of the new one.
+	 * @param newState the new state
+	 * @param forceEntry whether to exit and re-enter the state even if the FSM
+	 *		is already in it, such as when resetting
+	 */
+	protected void setCurrentState(S newState, boolean forceEntry) {
+		if (newState == currentState && !forceEntry) {
+			return;
+		}
+
+		if (currentState != null) {
+			Runnable exitHook = exitHooks[currentState.ordinal()];
+			if (exitHook != null) {
+				exitHook.run();
+			}
+			transitionCount++;
+		}
+
 		currentState = newState;
+		entryCounts[newState.ordinal()]++;
+		Runnable entryHook = entryHooks[newState.ordinal()];
+		if (entryHook != null) {
+			entryHook.run();
+		}
+	}
+
+	/**
+	 * Register the handler and transition function for a state.
+	 * @param state the state
+	 * @param handler runs the state's outputs each tick
+	 * @param transition decides the state to go to after the handler runs
+	 */
+	protected void addState(S state, StateHandler handler, Transition<S> transition) {
+		handlers[state.ordinal()] = handler;
+		transitions[state.ordinal()] = transition;
+	}
+
+	/**
+	 * Register a hook to run when the FSM enters a state.
+	 * @param state the state
+	 * @param hook the hook to run
+	 */
+	protected void onEntry(S state, Runnable hook) {
+		entryHooks[state.ordinal()] = hook;
+	}
+
+	/**
+	 * Register a hook to run when the FSM leaves a state.
+	 * @param state the state
+	 * @param hook the hook to run
+	 */
+	protected void onExit(S state, Runnable hook) {
+		exitHooks[state.ordinal()] = hook;
 	}
 
 	/**
@@ -47,7 +196,9 @@ public abstract class FSMSystem<S> {
 	 *
 	 * Note this is distinct from the one-time initialization in the constructor
 	 * as it may be called multiple times in a boot cycle,
-	 * Ex. if the robot is enabled, disabled, then reenabled.
+	 * Ex. if the robot is enabled, disabled, then reenabled. Use
+	 * {@link #setCurrentState(Enum, boolean)} with forceEntry set so the start
+	 * state's entry hook runs even if the FSM is already in it.
 	 */
 	public abstract void reset();
 
@@ -57,7 +208,27 @@ public abstract class FSMSystem<S> {
 	 * @param input Global TeleopInput if robot in teleop mode or null if
 	 *		the robot is in autonomous mode.
 	 */
-	public abstract void update(TeleopInput input);
+	public void update(TeleopInput input) {
+		int index = currentState.ordinal();
+		StateHandler handler = handlers[index];
+		if (handler == null) {
+			throw new IllegalStateException("Invalid state: " + currentState.toString());
+		}
+
+		long start = System.nanoTime();
+		handler.handle(input);
+		long handlerNanos = System.nanoTime() - start;
+
+		long now = Logger.getTimestamp();
+		if (lastUpdateMicros >= 0 && now - lastUpdateMicros <= MAX_TICK_GAP_MICROS) {
+			timeInStateMicros[index] += now - lastUpdateMicros;
+		}
+		lastUpdateMicros = now;
+
+		Logger.recordOutput(handlerNsKeys[index], handlerNanos);
+		setCurrentState(nextState(input));
+		logMetrics(index);
+	}
 
 	/**
 	 * Decide the next state to transition to. This is a function of the inputs
@@ -68,6 +239,31 @@ public abstract class FSMSystem<S> {
 	 *		the robot is in autonomous mode.
 	 * @return FSM state for the next iteration
 	 */
-	protected abstract S nextState(TeleopInput input);
+	protected S nextState(TeleopInput input) {
+		Transition<S> transition = transitions[currentState.ordinal()];
+		if (transition == null) {
+			throw new IllegalStateException("Invalid state: " + currentState.toString());
+		}
+		return transition.next(input);
+	}
 
+	/**
+	 * Logs the current state and the counters that may have changed this tick,
+	 * those of the state that ran and of the state the FSM is now in. The log
+	 * keeps the last value of every other state's counters.
+	 * @param ranIndex the ordinal of the state whose handler ran
+	 */
+	private void logMetrics(int ranIndex) {
+		Logger.recordOutput(stateKey, currentState);
+		Logger.recordOutput(transitionsKey, transitionCount);
+		logStateMetrics(ranIndex);
+		if (currentState.ordinal() != ranIndex) {
+			logStateMetrics(currentState.ordinal());
+		}
+	}
+
+	private void logStateMetrics(int index) {
+		Logger.recordOutput(timeInStateKeys[index], timeInStateMicros[index] / MICROS_PER_SECOND);
+		Logger.recordOutput(entryCountKeys[index], entryCounts[index]);
+	}
 }
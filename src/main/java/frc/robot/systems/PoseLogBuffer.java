@@ -0,0 +1,89 @@
+package frc.robot.systems;
+
+import edu.wpi.first.math.geometry.Pose3d;
+
+/**
+ * Reusable pose buffer for per-cycle logging. The backing storage is sized once
+ * at construction and the exact-length arrays handed to the logger are cached by
+ * length, so clearing and refilling the buffer every cycle does not allocate.
+ */
+final class PoseLogBuffer {
+	private Pose3d[] poses;
+	private Pose3d[][] outputsBySize;
+	private int size = 0;
+
+	/**
+	 * Creates a new PoseLogBuffer.
+	 * @param capacity the number of poses expected per cycle
+	 */
+	PoseLogBuffer(int capacity) {
+		poses = new Pose3d[capacity];
+		outputsBySize = new Pose3d[capacity + 1][];
+		outputsBySize[0] = new Pose3d[0];
+	}
+
+	/**
+	 * Removes all poses from the buffer.
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of poses in the buffer.
+	 * @return the number of poses
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a pose to the buffer. The buffer only grows if the capacity given at
+	 * construction is exceeded.
+	 * @param pose the pose to add
+	 */
+	void add(Pose3d pose) {
+		if (size == poses.length) {
+			grow(size + 1);
+		}
+		poses[size++] = pose;
+	}
+
+	/**
+	 * Adds every pose in another buffer to this one.
+	 * @param other the buffer to copy from
+	 */
+	void addAll(PoseLogBuffer other) {
+		if (size + other.size > poses.length) {
+			grow(size + other.size);
+		}
+		System.arraycopy(other.poses, 0, poses, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Returns the buffered poses as an exact-length array. The returned array is
+	 * owned by this buffer and is overwritten by the next call with the same size.
+	 * @return the buffered poses
+	 */
+	Pose3d[] toArray() {
+		Pose3d[] output = outputsBySize[size];
+		if (output == null) {
+			output = new Pose3d[size];
+			outputsBySize[size] = output;
+		}
+		System.arraycopy(poses, 0, output, 0, size);
+		return output;
+	}
+
+	private void grow(int minCapacity) {
+		int newCapacity = Math.max(minCapacity, poses.length * 2);
+		Pose3d[] newPoses = new Pose3d[newCapacity];
+		System.arraycopy(poses, 0, newPoses, 0, size);
+		poses = newPoses;
+
+		Pose3d[][] newOutputs = new Pose3d[newCapacity + 1][];
+		System.arraycopy(outputsBySize, 0, newOutputs, 0, outputsBySize.length);
+		outputsBySize = newOutputs;
+	}
+}
@@ -0,0 +1,219 @@
+package frc.robot.systems;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.TeleopInput;
+import frc.robot.util.JvmTelemetry;
+import frc.robot.util.LoopProfiler;
+
+/**
+ * Runs every system from one place each robot loop, each at its own rate.
+ *
+ * Each task has a period, a time budget and a priority. Every loop the tasks
+ * that are due run in priority order, highest first. A task with a period longer
+ * than one loop is given the phase that the fewest existing tasks already run
+ * on, so slow tasks do not all land on the same loop. Each run is timed, and a
+ * run that takes longer than its budget is logged as a deadline miss. Every run,
+ * and the whole loop, is also recorded in a {@link LoopProfiler}, and the bytes
+ * each run allocates are attributed to it in a {@link JvmTelemetry}.
+ */
+public class SystemScheduler {
+	private static final double NANOS_PER_SECOND = 1e9;
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private final double loopPeriodSecs;
+	private final LoopProfiler profiler;
+	private final JvmTelemetry telemetry;
+	private final int totalStage;
+	private final long loopPeriodNanos;
+	private final List<Task> tasks = new ArrayList<>();
+	private long cycle = 0;
+
+	/** A registered unit of periodic work. */
+	private static final class Task {
+		private final Runnable body;
+		private final int periodCycles;
+		private final int phase;
+		private final int priority;
+		private final long budgetNanos;
+		private final int profilerStage;
+		private final int allocationStage;
+
+		private final String execMsKey;
+		private final String deadlineMissKey;
+		private final String missCountKey;
+		private long missCount = 0;
+
+		private Task(
+				String taskName,
+				Runnable work,
+				int period,
+				int phaseOffset,
+				int taskPriority,
+				long budget,
+				int stage,
+				int allocations) {
+			this.body = work;
+			this.periodCycles = period;
+			this.phase = phaseOffset;
+			this.priority = taskPriority;
+			this.budgetNanos = budget;
+			this.profilerStage = stage;
+			this.allocationStage = allocations;
+			execMsKey = "Scheduler/" + taskName + "/ExecMs";
+			deadlineMissKey = "Scheduler/" + taskName + "/DeadlineMiss";
+			missCountKey = "Scheduler/" + taskName + "/DeadlineMisses";
+		}
+
+		private boolean isDue(long loop) {
+			return loop % periodCycles == phase;
+		}
+	}
+
+	/**
+	 * Creates a new SystemScheduler.
+	 * @param loopPeriod the robot loop period in seconds
+	 * @param loopProfiler the profiler to record every run in
+	 * @param jvmTelemetry the telemetry to attribute allocations and overruns to
+	 */
+	public SystemScheduler(
+			double loopPeriod,
+			LoopProfiler loopProfiler,
+			JvmTelemetry jvmTelemetry) {
+		this.loopPeriodSecs = loopPeriod;
+		this.profiler = loopProfiler;
+		this.telemetry = jvmTelemetry;
+		loopPeriodNanos = (long) (loopPeriod * NANOS_PER_SECOND);
+		totalStage = loopProfiler.addStage("Total", loopPeriod);
+	}
+
+	/**
+	 * Registers a task.
+	 * @param name the name to log the task's timing under
+	 * @param periodSecs how often to run the task in seconds, rounded to a whole
+	 *		number of loops
+	 * @param budgetSecs how long one run may take before it counts as a deadline
+	 *		miss, in seconds
+	 * @param priority the order to run due tasks in, highest first
+	 * @param task the work to run
+	 */
+	public void addTask(
+			String name,
+			double periodSecs,
+			double budgetSecs,
+			int priority,
+			Runnable task) {
+		int period = Math.max(1, (int) Math.round(periodSecs / loopPeriodSecs));
+		Task added = new Task(
+			name, task, period, leastLoadedPhase(period), priority,
+			(long) (budgetSecs * NANOS_PER_SECOND),
+			profiler.addStage(name, budgetSecs),
+			telemetry.addStage(name));
+
+		// Keep tasks sorted by priority, in registration order within a priority
+		int index = 0;
+		while (index < tasks.size() && tasks.get(index).priority >= priority) {
+			index++;
+		}
+		tasks.add(index, added);
+	}
+
+	/**
+	 * Registers an FSM, updating it with the current teleop input each run.
+	 * @param name the name to log the FSM's timing under
+	 * @param system the FSM to update
+	 * @param input supplier for the TeleopInput, which returns null outside teleop
+	 * @param periodSecs how often to update the FSM in seconds
+	 * @param budgetSecs how long one update may take in seconds
+	 * @param priority the order to run due tasks in, highest first
+	 */
+	public void addSystem(
+			String name,
+			FSMSystem<?> system,
+			Supplier<TeleopInput> input,
+			double periodSecs,
+			double budgetSecs,
+			int priority) {
+		addTask(name, periodSecs, budgetSecs, priority, () -> system.update(input.get()));
+	}
+
+	/**
+	 * Registers a subsystem, calling its periodic method each run.
+	 * @param name the name to log the subsystem's timing under
+	 * @param subsystem the subsystem to run
+	 * @param periodSecs how often to run the subsystem in seconds
+	 * @param budgetSecs how long one run may take in seconds
+	 * @param priority the order to run due tasks in, highest first
+	 */
+	public void addSubsystem(
+			String name,
+			Subsystem subsystem,
+			double periodSecs,
+			double budgetSecs,
+			int priority) {
+		addTask(name, periodSecs, budgetSecs, priority, subsystem::periodic);
+	}
+
+	/**
+	 * Runs every task that is due this loop. Call once per robot loop.
+	 */
+	public void run() {
+		long loopStart = System.nanoTime();
+		for (int i = 0; i < tasks.size(); i++) {
+			Task task = tasks.get(i);
+			if (!task.isDue(cycle)) {
+				continue;
+			}
+
+			long startBytes = telemetry.beginStage();
+			long start = System.nanoTime();
+			task.body.run();
+			long elapsed = System.nanoTime() - start;
+			telemetry.endStage(task.allocationStage, startBytes);
+			profiler.record(task.profilerStage, elapsed);
+
+			boolean missed = elapsed > task.budgetNanos;
+			if (missed) {
+				task.missCount++;
+			}
+			Logger.recordOutput(task.execMsKey, elapsed / NANOS_PER_MILLI);
+			Logger.recordOutput(task.deadlineMissKey, missed);
+			Logger.recordOutput(task.missCountKey, task.missCount);
+		}
+		long loopNanos = System.nanoTime() - loopStart;
+		profiler.record(totalStage, loopNanos);
+		if (loopNanos > loopPeriodNanos) {
+			telemetry.recordOverrun();
+		}
+		cycle++;
+	}
+
+	/**
+	 * Finds the phase for a new task that the fewest existing tasks run on.
+	 * @param period the new task's period in loops
+	 * @return the phase, from 0 to period - 1
+	 */
+	private int leastLoadedPhase(int period) {
+		int bestPhase = 0;
+		int bestLoad = Integer.MAX_VALUE;
+		for (int phase = 0; phase < period; phase++) {
+			int load = 0;
+			for (Task task : tasks) {
+				// Tasks running every loop load every phase equally, so skip them
+				if (task.periodCycles > 1 && task.isDue(phase)) {
+					load++;
+				}
+			}
+			if (load < bestLoad) {
+				bestLoad = load;
+				bestPhase = phase;
+			}
+		}
+		return bestPhase;
+	}
+}
@@ -15,7 +15,6 @@ package frc.robot.systems;
 
 
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -24,16 +23,18 @@ import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LogPolicy;
+import frc.robot.util.TagTable;
 
 import static frc.robot.Constants.VisionConstants.ANGULAR_STD_DEV_BASELINE;
 import static frc.robot.Constants.VisionConstants.CAMERA_STD_DEV_FACTORS;
+import static frc.robot.Constants.VisionConstants.FUSION_MODE;
+import static frc.robot.Constants.VisionConstants.FUSION_WINDOW_SECS;
 import static frc.robot.Constants.VisionConstants.LINEAR_STD_DEV_BASELINE;
 import static frc.robot.Constants.VisionConstants.MAX_AMBIGUITY;
+import static frc.robot.Constants.VisionConstants.MAX_POSE_OBSERVATIONS_PER_CYCLE;
 import static frc.robot.Constants.VisionConstants.MAX_Z_ERROR;
-import static frc.robot.Constants.VisionConstants.TAG_LAYOUT;
 
-import java.util.LinkedList;
-import java.util.List;
 import org.littletonrobotics.junction.Logger;
 
 public class Vision extends SubsystemBase {
@@ -41,6 +42,30 @@ public class Vision extends SubsystemBase {
 	private final VisionIO[] io;
 	private final VisionIOInputsAutoLogged[] inputs;
 	private final Alert[] disconnectedAlerts;
+	private final VisionFusion fusion;
+	private final VisionFilterChain filters;
+
+	// Log keys and channels, built once so the periodic loop does not concatenate
+	// strings or match log policy rules
+	private final String[] inputsKeys;
+	private final LogPolicy.Channel[] tagPosesChannels;
+	private final LogPolicy.Channel[] robotPosesChannels;
+	private final LogPolicy.Channel[] robotPosesAcceptedChannels;
+	private final LogPolicy.Channel[] robotPosesRejectedChannels;
+	private final LogPolicy.Channel summaryTagPosesChannel;
+	private final LogPolicy.Channel summaryRobotPosesChannel;
+	private final LogPolicy.Channel summaryRobotPosesAcceptedChannel;
+	private final LogPolicy.Channel summaryRobotPosesRejectedChannel;
+
+	// Logging buffers, reused every cycle
+	private final PoseLogBuffer[] tagPoses;
+	private final PoseLogBuffer[] robotPoses;
+	private final PoseLogBuffer[] robotPosesAccepted;
+	private final PoseLogBuffer[] robotPosesRejected;
+	private final PoseLogBuffer allTagPoses;
+	private final PoseLogBuffer allRobotPoses;
+	private final PoseLogBuffer allRobotPosesAccepted;
+	private final PoseLogBuffer allRobotPosesRejected;
 
 	/**
 	 * Creates a new Vision subsystem.
@@ -64,6 +89,71 @@ public class Vision extends SubsystemBase {
 					"Vision camera "
 					+ Integer.toString(i) + " is disconnected.", AlertType.kWarning);
 		}
+
+		this.fusion = new VisionFusion(FUSION_MODE, FUSION_WINDOW_SECS);
+
+		// Initialize rejection pipeline, cheapest checks first
+		this.filters = new VisionFilterChain();
+		// Must have at least one tag
+		filters.addFilter("TagCount", (camera, observation) -> observation.tagCount() > 0);
+		// Cannot be high ambiguity
+		filters.addFilter("Ambiguity", (camera, observation) ->
+				observation.tagCount() > 1 || observation.ambiguity() <= MAX_AMBIGUITY);
+		// Must have realistic Z coordinate
+		filters.addFilter("ZError", (camera, observation) ->
+				Math.abs(observation.pose().getZ()) <= MAX_Z_ERROR);
+		// Must be within the field boundaries
+		filters.addFilter("FieldBounds", (camera, observation) ->
+				TagTable.isOnField(observation.pose().getX(), observation.pose().getY()));
+
+		// Initialize log keys and buffers
+		int tagCapacity = TagTable.TAG_COUNT;
+		this.inputsKeys = new String[io.length];
+		this.tagPosesChannels = new LogPolicy.Channel[io.length];
+		this.robotPosesChannels = new LogPolicy.Channel[io.length];
+		this.robotPosesAcceptedChannels = new LogPolicy.Channel[io.length];
+		this.robotPosesRejectedChannels = new LogPolicy.Channel[io.length];
+		this.tagPoses = new PoseLogBuffer[io.length];
+		this.robotPoses = new PoseLogBuffer[io.length];
+		this.robotPosesAccepted = new PoseLogBuffer[io.length];
+		this.robotPosesRejected = new PoseLogBuffer[io.length];
+		for (int i = 0; i < io.length; i++) {
+			String cameraKey = "Vision/Camera" + Integer.toString(i);
+			inputsKeys[i] = cameraKey;
+			tagPosesChannels[i] = LogPolicy.channel(cameraKey + "/TagPoses");
+			robotPosesChannels[i] = LogPolicy.channel(cameraKey + "/RobotPoses");
+			robotPosesAcceptedChannels[i] =
+				LogPolicy.channel(cameraKey + "/RobotPosesAccepted");
+			robotPosesRejectedChannels[i] =
+				LogPolicy.channel(cameraKey + "/RobotPosesRejected");
+
+			tagPoses[i] = new PoseLogBuffer(tagCapacity);
+			robotPoses[i] = new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE);
+			robotPosesAccepted[i] = new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE);
+			robotPosesRejected[i] = new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE);
+		}
+		this.allTagPoses = new PoseLogBuffer(tagCapacity * io.length);
+		this.allRobotPoses = new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE * io.length);
+		this.allRobotPosesAccepted =
+			new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE * io.length);
+		this.allRobotPosesRejected =
+			new PoseLogBuffer(MAX_POSE_OBSERVATIONS_PER_CYCLE * io.length);
+		this.summaryTagPosesChannel = LogPolicy.channel("Vision/Summary/TagPoses");
+		this.summaryRobotPosesChannel = LogPolicy.channel("Vision/Summary/RobotPoses");
+		this.summaryRobotPosesAcceptedChannel =
+			LogPolicy.channel("Vision/Summary/RobotPosesAccepted");
+		this.summaryRobotPosesRejectedChannel =
+			LogPolicy.channel("Vision/Summary/RobotPosesRejected");
+	}
+
+	/**
+	 * Adds a filter that runs before the default rejection checks. Pre-filters run
+	 * in the order they are added.
+	 * @param name the name to log the filter under
+	 * @param filter the filter
+	 */
+	public void addPreFilter(String name, VisionFilter filter) {
+		filters.addPreFilter(name, filter);
 	}
 
 	/**
@@ -81,56 +171,51 @@ public class Vision extends SubsystemBase {
 	public void periodic() {
 		for (int i = 0; i < io.length; i++) {
 			io[i].updateInputs(inputs[i]);
-			Logger.processInputs("Vision/Camera" + Integer.toString(i), inputs[i]);
+			Logger.processInputs(inputsKeys[i], inputs[i]);
 		}
 
-		// Initialize logging values
-		List<Pose3d> allTagPoses = new LinkedList<>();
-		List<Pose3d> allRobotPoses = new LinkedList<>();
-		List<Pose3d> allRobotPosesAccepted = new LinkedList<>();
-		List<Pose3d> allRobotPosesRejected = new LinkedList<>();
+		// Reset logging values
+		allTagPoses.clear();
+		allRobotPoses.clear();
+		allRobotPosesAccepted.clear();
+		allRobotPosesRejected.clear();
 
 		// Loop over cameras
 		for (int cameraIndex = 0; cameraIndex < io.length; cameraIndex++) {
 			// Update disconnected alert
 			disconnectedAlerts[cameraIndex].set(!inputs[cameraIndex].connected);
 
-			// Initialize logging values
-			List<Pose3d> tagPoses = new LinkedList<>();
-			List<Pose3d> robotPoses = new LinkedList<>();
-			List<Pose3d> robotPosesAccepted = new LinkedList<>();
-			List<Pose3d> robotPosesRejected = new LinkedList<>();
+			// Reset logging values
+			PoseLogBuffer cameraTagPoses = tagPoses[cameraIndex];
+			PoseLogBuffer cameraRobotPoses = robotPoses[cameraIndex];
+			PoseLogBuffer cameraRobotPosesAccepted = robotPosesAccepted[cameraIndex];
+			PoseLogBuffer cameraRobotPosesRejected = robotPosesRejected[cameraIndex];
+			cameraTagPoses.clear();
+			cameraRobotPoses.clear();
+			cameraRobotPosesAccepted.clear();
+			cameraRobotPosesRejected.clear();
 
 			// Add tag poses
 			for (int tagId : inputs[cameraIndex].tagIds) {
-				var tagPose = TAG_LAYOUT.getTagPose(tagId);
-				if (tagPose.isPresent()) {
-					tagPoses.add(tagPose.get());
+				Pose3d tagPose = TagTable.getPose3d(tagId);
+				if (tagPose != null) {
+					cameraTagPoses.add(tagPose);
 				}
 			}
 
 			// Loop over pose observations
 			for (var observation : inputs[cameraIndex].poseObservations) {
+				Pose3d pose = observation.pose();
+
 				// Check whether to reject pose
-				boolean rejectPose = observation.tagCount() == 0 // Must have at least one tag
-						|| (observation.tagCount() == 1
-								// Cannot be high ambiguity
-								&& observation.ambiguity() > MAX_AMBIGUITY)
-						// Must have realistic Z coordinate
-						|| Math.abs(observation.pose().getZ()) > MAX_Z_ERROR
-
-						// Must be within the field boundaries
-						|| observation.pose().getX() < 0.0
-						|| observation.pose().getX() > TAG_LAYOUT.getFieldLength()
-						|| observation.pose().getY() < 0.0
-						|| observation.pose().getY() > TAG_LAYOUT.getFieldWidth();
+				boolean rejectPose = !filters.accept(cameraIndex, observation);
 
 				// Add pose to log
-				robotPoses.add(observation.pose());
+				cameraRobotPoses.add(pose);
 				if (rejectPose) {
-					robotPosesRejected.add(observation.pose());
+					cameraRobotPosesRejected.add(pose);
 				} else {
-					robotPosesAccepted.add(observation.pose());
+					cameraRobotPosesAccepted.add(pose);
 				}
 
 				// Skip if rejected
@@ -139,66 +224,109 @@ public class Vision extends SubsystemBase {
 				}
 
 				// Calculate standard deviations
-				double stdDevFactor =
-					Math.pow(observation.averageTagDistance(), 2.0) / observation.tagCount();
+				double stdDevFactor = stdDevFactor(
+						observation.averageTagDistance(), observation.tagCount(), cameraIndex);
 				double linearStdDev = LINEAR_STD_DEV_BASELINE * stdDevFactor;
 				double angularStdDev = ANGULAR_STD_DEV_BASELINE * stdDevFactor;
-				if (cameraIndex < CAMERA_STD_DEV_FACTORS.length) {
-					linearStdDev *= CAMERA_STD_DEV_FACTORS[cameraIndex];
-					angularStdDev *= CAMERA_STD_DEV_FACTORS[cameraIndex];
-				}
 
-				// Send vision observation
-				visionConsumer.accept(
-						observation.pose().toPose2d(),
+				// Queue vision observation for fusion
+				fusion.add(
+						cameraIndex,
+						pose.getX(),
+						pose.getY(),
+						pose.getRotation().getZ(),
 						observation.timestamp(),
-						VecBuilder.fill(linearStdDev, linearStdDev, angularStdDev));
+						linearStdDev,
+						angularStdDev);
 			}
 
 			// Log camera datadata
-			Logger.recordOutput(
-					"Vision/Camera" + Integer.toString(cameraIndex) + "/TagPoses",
-					tagPoses.toArray(new Pose3d[tagPoses.size()]));
-			Logger.recordOutput(
-					"Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPoses",
-					robotPoses.toArray(new Pose3d[robotPoses.size()]));
-			Logger.recordOutput(
-					"Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesAccepted",
-					robotPosesAccepted.toArray(new Pose3d[robotPosesAccepted.size()]));
-			Logger.recordOutput(
-					"Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesRejected",
-					robotPosesRejected.toArray(new Pose3d[robotPosesRejected.size()]));
-			allTagPoses.addAll(tagPoses);
-			allRobotPoses.addAll(robotPoses);
-			allRobotPosesAccepted.addAll(robotPosesAccepted);
-			allRobotPosesRejected.addAll(robotPosesRejected);
+			tagPosesChannels[cameraIndex].record(cameraTagPoses.toArray());
+			robotPosesChannels[cameraIndex].record(cameraRobotPoses.toArray());
+			robotPosesAcceptedChannels[cameraIndex].record(cameraRobotPosesAccepted.toArray());
+			robotPosesRejectedChannels[cameraIndex].record(cameraRobotPosesRejected.toArray());
+			allTagPoses.addAll(cameraTagPoses);
+			allRobotPoses.addAll(cameraRobotPoses);
+			allRobotPosesAccepted.addAll(cameraRobotPosesAccepted);
+			allRobotPosesRejected.addAll(cameraRobotPosesRejected);
 		}
 
+		// Send fused vision observations
+		fusion.flush(visionConsumer);
+		filters.log();
+
 		// Log summary data
-		Logger.recordOutput(
-				"Vision/Summary/TagPoses", allTagPoses.toArray(new Pose3d[allTagPoses.size()]));
-		Logger.recordOutput(
-				"Vision/Summary/RobotPoses",
-				allRobotPoses.toArray(new Pose3d[allRobotPoses.size()]));
-		Logger.recordOutput(
-				"Vision/Summary/RobotPosesAccepted",
-				allRobotPosesAccepted.toArray(new Pose3d[allRobotPosesAccepted.size()]));
-		Logger.recordOutput(
-				"Vision/Summary/RobotPosesRejected",
-				allRobotPosesRejected.toArray(new Pose3d[allRobotPosesRejected.size()]));
+		summaryTagPosesChannel.record(allTagPoses.toArray());
+		summaryRobotPosesChannel.record(allRobotPoses.toArray());
+		summaryRobotPosesAcceptedChannel.record(allRobotPosesAccepted.toArray());
+		summaryRobotPosesRejectedChannel.record(allRobotPosesRejected.toArray());
+	}
+
+	/**
+	 * Computes how much to scale the baseline standard deviations for an
+	 * observation. Uncertainty grows with the square of distance, shrinks with
+	 * more tags, and is scaled per camera.
+	 * @param averageTagDistance the average distance to the tags in meters
+	 * @param tagCount the number of tags used
+	 * @param cameraIndex the index of the camera
+	 * @return the standard deviation scale factor
+	 */
+	static double stdDevFactor(double averageTagDistance, int tagCount, int cameraIndex) {
+		double factor = averageTagDistance * averageTagDistance / tagCount;
+		if (cameraIndex < CAMERA_STD_DEV_FACTORS.length) {
+			factor *= CAMERA_STD_DEV_FACTORS[cameraIndex];
+		}
+		return factor;
+	}
+
+	/**
+	 * Returns the rejection pipeline.
+	 * @return the filter chain
+	 */
+	VisionFilterChain getFilters() {
+		return filters;
 	}
 
 	@FunctionalInterface
 	public interface VisionConsumer {
+		/**
+		 * Accepts a vision observation as primitives, so no pose or matrix has to
+		 * be allocated for it.
+		 * @param x The robot X position in meters.
+		 * @param y The robot Y position in meters.
+		 * @param theta The robot heading in radians.
+		 * @param timestampSeconds The timestamp in seconds.
+		 * @param xStdDev The X standard deviation in meters.
+		 * @param yStdDev The Y standard deviation in meters.
+		 * @param thetaStdDev The heading standard deviation in radians.
+		 */
+		void accept(
+				double x,
+				double y,
+				double theta,
+				double timestampSeconds,
+				double xStdDev,
+				double yStdDev,
+				double thetaStdDev);
+
 		/**
 		 * Accepts a vision observation.
 		 * @param visionRobotPoseMeters The robot pose in meters.
 		 * @param timestampSeconds The timestamp in seconds.
 		 * @param visionMeasurementStdDevs The standard deviations of the vision
 		 */
-		void accept(
+		default void accept(
 				Pose2d visionRobotPoseMeters,
 				double timestampSeconds,
-				Matrix<N3, N1> visionMeasurementStdDevs);
+				Matrix<N3, N1> visionMeasurementStdDevs) {
+			accept(
+					visionRobotPoseMeters.getX(),
+					visionRobotPoseMeters.getY(),
+					visionRobotPoseMeters.getRotation().getRadians(),
+					timestampSeconds,
+					visionMeasurementStdDevs.get(0, 0),
+					visionMeasurementStdDevs.get(1, 0),
+					visionMeasurementStdDevs.get(2, 0));
+		}
 	}
 }
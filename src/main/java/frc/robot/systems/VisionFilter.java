@@ -0,0 +1,57 @@
+package frc.robot.systems;
+
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.systems.VisionIO.PoseObservation;
+
+/**
+ * A single stage of the vision rejection pipeline.
+ */
+@FunctionalInterface
+public interface VisionFilter {
+	/**
+	 * Decides whether to keep a pose observation.
+	 * @param cameraIndex the index of the camera the observation came from
+	 * @param observation the pose observation
+	 * @return true to keep the observation, false to reject it
+	 */
+	boolean accept(int cameraIndex, PoseObservation observation);
+
+	/**
+	 * Creates a filter that rejects observations too far from the current
+	 * odometry pose. This will also reject good observations if odometry has
+	 * drifted further than the limit, so it should only be used once the pose has
+	 * been seeded.
+	 * @param poseSupplier supplier for the current odometry pose
+	 * @param maxJumpMeters the largest allowed distance from odometry in meters
+	 * @return the filter
+	 */
+	static VisionFilter maxJump(Supplier<Pose2d> poseSupplier, double maxJumpMeters) {
+		return (cameraIndex, observation) -> {
+			Pose2d odometryPose = poseSupplier.get();
+			double dx = observation.pose().getX() - odometryPose.getX();
+			double dy = observation.pose().getY() - odometryPose.getY();
+			return dx * dx + dy * dy <= maxJumpMeters * maxJumpMeters;
+		};
+	}
+
+	/**
+	 * Creates a filter that rejects observations while the robot is moving too
+	 * fast for the camera to produce a sharp image.
+	 * @param speedsSupplier supplier for the current robot-relative speeds
+	 * @param maxSpeedMetersPerSec the largest allowed translational speed in
+	 *		meters per second
+	 * @return the filter
+	 */
+	static VisionFilter maxSpeed(
+			Supplier<ChassisSpeeds> speedsSupplier, double maxSpeedMetersPerSec) {
+		return (cameraIndex, observation) -> {
+			ChassisSpeeds speeds = speedsSupplier.get();
+			double vx = speeds.vxMetersPerSecond;
+			double vy = speeds.vyMetersPerSecond;
+			return vx * vx + vy * vy <= maxSpeedMetersPerSec * maxSpeedMetersPerSec;
+		};
+	}
+}
@@ -0,0 +1,121 @@
+package frc.robot.systems;
+
+import java.util.Arrays;
+
+import org.littletonrobotics.junction.Logger;
+
+import frc.robot.systems.VisionIO.PoseObservation;
+
+/**
+ * Ordered chain of vision filters. An observation is checked against each stage
+ * in turn and the chain stops at the first stage that rejects it, so cheap
+ * stages should come first. Each stage records how many observations it
+ * rejected and how long it takes per observation. Only one observation in
+ * {@value #TIMING_SAMPLE_PERIOD} is timed, so timing costs a fraction of a
+ * clock read per stage instead of two.
+ */
+public class VisionFilterChain {
+	private static final int INITIAL_CAPACITY = 8;
+	// Must be a power of two
+	private static final int TIMING_SAMPLE_PERIOD = 64;
+
+	private int size = 0;
+	private int preFilterCount = 0;
+	private VisionFilter[] filters = new VisionFilter[INITIAL_CAPACITY];
+	private String[] rejectedKeys = new String[INITIAL_CAPACITY];
+	private String[] nanosKeys = new String[INITIAL_CAPACITY];
+	private long[] rejectedCounts = new long[INITIAL_CAPACITY];
+	private long[] timedCounts = new long[INITIAL_CAPACITY];
+	private long[] totalNanos = new long[INITIAL_CAPACITY];
+	private long acceptedCount = 0;
+	private long observationCount = 0;
+
+	/**
+	 * Adds a stage to the end of the chain.
+	 * @param name the name to log the stage under
+	 * @param filter the filter
+	 */
+	public void addFilter(String name, VisionFilter filter) {
+		insert(size, name, filter);
+	}
+
+	/**
+	 * Adds a stage after any existing pre-filters but before every other stage.
+	 * Use this for checks that are cheaper than the default stages.
+	 * @param name the name to log the stage under
+	 * @param filter the filter
+	 */
+	public void addPreFilter(String name, VisionFilter filter) {
+		insert(preFilterCount, name, filter);
+		preFilterCount++;
+	}
+
+	/**
+	 * Runs an observation through the chain.
+	 * @param cameraIndex the index of the camera the observation came from
+	 * @param observation the pose observation
+	 * @return true if every stage accepted the observation
+	 */
+	public boolean accept(int cameraIndex, PoseObservation observation) {
+		boolean timed = (observationCount++ & (TIMING_SAMPLE_PERIOD - 1)) == 0;
+		for (int i = 0; i < size; i++) {
+			boolean accepted;
+			if (timed) {
+				long start = System.nanoTime();
+				accepted = filters[i].accept(cameraIndex, observation);
+				totalNanos[i] += System.nanoTime() - start;
+				timedCounts[i]++;
+			} else {
+				accepted = filters[i].accept(cameraIndex, observation);
+			}
+			if (!accepted) {
+				rejectedCounts[i]++;
+				return false;
+			}
+		}
+		acceptedCount++;
+		return true;
+	}
+
+	/**
+	 * Logs the rejection count and average cost of each stage, averaged over the
+	 * timed observations.
+	 */
+	public void log() {
+		for (int i = 0; i < size; i++) {
+			Logger.recordOutput(rejectedKeys[i], rejectedCounts[i]);
+			Logger.recordOutput(
+				nanosKeys[i],
+				timedCounts[i] == 0 ? 0.0 : (double) totalNanos[i] / timedCounts[i]);
+		}
+		Logger.recordOutput("Vision/Filters/Accepted", acceptedCount);
+	}
+
+	private void insert(int index, String name, VisionFilter filter) {
+		if (size == filters.length) {
+			int capacity = filters.length * 2;
+			filters = Arrays.copyOf(filters, capacity);
+			rejectedKeys = Arrays.copyOf(rejectedKeys, capacity);
+			nanosKeys = Arrays.copyOf(nanosKeys, capacity);
+			rejectedCounts = Arrays.copyOf(rejectedCounts, capacity);
+			timedCounts = Arrays.copyOf(timedCounts, capacity);
+			totalNanos = Arrays.copyOf(totalNanos, capacity);
+		}
+
+		int moved = size - index;
+		System.arraycopy(filters, index, filters, index + 1, moved);
+		System.arraycopy(rejectedKeys, index, rejectedKeys, index + 1, moved);
+		System.arraycopy(nanosKeys, index, nanosKeys, index + 1, moved);
+		System.arraycopy(rejectedCounts, index, rejectedCounts, index + 1, moved);
+		System.arraycopy(timedCounts, index, timedCounts, index + 1, moved);
+		System.arraycopy(totalNanos, index, totalNanos, index + 1, moved);
+
+		filters[index] = filter;
+		rejectedKeys[index] = "Vision/Filters/" + name + "/Rejected";
+		nanosKeys[index] = "Vision/Filters/" + name + "/NsPerOp";
+		rejectedCounts[index] = 0;
+		timedCounts[index] = 0;
+		totalNanos[index] = 0;
+		size++;
+	}
+}
@@ -0,0 +1,235 @@
+package frc.robot.systems;
+
+import java.util.Arrays;
+
+import org.littletonrobotics.junction.Logger;
+
+import frc.robot.systems.Vision.VisionConsumer;
+
+/**
+ * Merges the vision measurements accepted in one cycle into fewer,
+ * inverse-variance weighted measurements before they are sent to the pose
+ * estimator. Each measurement sent to the drivetrain is a backdated Kalman
+ * correction, so fewer measurements means less history for it to replay.
+ *
+ * Note that frames from the same camera are not truly independent, so the fused
+ * standard deviations are somewhat optimistic.
+ */
+public class VisionFusion {
+	/** How measurements are grouped before fusing. */
+	public enum FusionMode {
+		/** Pass every measurement through unchanged. */
+		NONE,
+		/** Fuse measurements from the same camera whose timestamps fall in one window. */
+		PER_CAMERA,
+		/** Fuse measurements from any camera whose timestamps fall in one window. */
+		TIME_WINDOW
+	}
+
+	private static final int INITIAL_CAPACITY = 16;
+	// Standard deviations are clamped to this before weighting, so a zero does not
+	// give an infinite weight and a NaN fused measurement
+	private static final double MIN_STD_DEV = 1e-4;
+
+	private final FusionMode mode;
+	private final double windowSeconds;
+
+	// Pending measurements, stored as parallel primitive arrays
+	private int size = 0;
+	private int[] cameras = new int[INITIAL_CAPACITY];
+	private double[] xs = new double[INITIAL_CAPACITY];
+	private double[] ys = new double[INITIAL_CAPACITY];
+	private double[] thetas = new double[INITIAL_CAPACITY];
+	private double[] timestamps = new double[INITIAL_CAPACITY];
+	private double[] linearStdDevs = new double[INITIAL_CAPACITY];
+	private double[] angularStdDevs = new double[INITIAL_CAPACITY];
+	private int[] order = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Creates a new VisionFusion stage.
+	 * @param fusionMode how to group measurements
+	 * @param window the width of a fusion window in seconds, used by
+	 *		{@link FusionMode#PER_CAMERA} and {@link FusionMode#TIME_WINDOW}
+	 */
+	public VisionFusion(FusionMode fusionMode, double window) {
+		this.mode = fusionMode;
+		this.windowSeconds = window;
+	}
+
+	/**
+	 * Adds an accepted measurement to be fused at the end of the cycle.
+	 * @param cameraIndex the camera the measurement came from
+	 * @param x the robot X position in meters
+	 * @param y the robot Y position in meters
+	 * @param theta the robot heading in radians
+	 * @param timestamp the measurement timestamp in seconds
+	 * @param linearStdDev the X and Y standard deviation in meters
+	 * @param angularStdDev the heading standard deviation in radians
+	 */
+	public void add(
+			int cameraIndex,
+			double x,
+			double y,
+			double theta,
+			double timestamp,
+			double linearStdDev,
+			double angularStdDev) {
+		if (size == xs.length) {
+			grow();
+		}
+		cameras[size] = cameraIndex;
+		xs[size] = x;
+		ys[size] = y;
+		thetas[size] = theta;
+		timestamps[size] = timestamp;
+		linearStdDevs[size] = linearStdDev;
+		angularStdDevs[size] = angularStdDev;
+		size++;
+	}
+
+	/**
+	 * Fuses the pending measurements, sends the results to a consumer, and clears
+	 * the stage for the next cycle.
+	 * @param consumer the consumer to send fused measurements to
+	 */
+	public void flush(VisionConsumer consumer) {
+		int measurementsIn = size;
+		int measurementsOut = 0;
+
+		switch (mode) {
+			case NONE:
+				for (int i = 0; i < size; i++) {
+					consumer.accept(
+							xs[i],
+							ys[i],
+							thetas[i],
+							timestamps[i],
+							linearStdDevs[i],
+							linearStdDevs[i],
+							angularStdDevs[i]);
+				}
+				measurementsOut = size;
+				break;
+			case PER_CAMERA:
+				sort(true);
+				measurementsOut += emitWindows(consumer, true);
+				break;
+			case TIME_WINDOW:
+				sort(false);
+				measurementsOut += emitWindows(consumer, false);
+				break;
+			default:
+				throw new IllegalStateException("Invalid fusion mode: " + mode.toString());
+		}
+
+		Logger.recordOutput("Vision/Fusion/MeasurementsIn", measurementsIn);
+		Logger.recordOutput("Vision/Fusion/MeasurementsOut", measurementsOut);
+		size = 0;
+	}
+
+	/**
+	 * Fuses each run of {@link #order} that spans no more than the window, and
+	 * optionally comes from one camera, and sends the results.
+	 * @param consumer the consumer to send fused measurements to
+	 * @param splitCameras whether a new run starts when the camera changes
+	 * @return the number of measurements sent
+	 */
+	private int emitWindows(VisionConsumer consumer, boolean splitCameras) {
+		int measurementsOut = 0;
+		int start = 0;
+		for (int i = 1; i <= size; i++) {
+			if (i == size
+					|| (splitCameras && cameras[order[i]] != cameras[order[start]])
+					|| timestamps[order[i]] - timestamps[order[start]] > windowSeconds) {
+				measurementsOut += emit(consumer, start, i);
+				start = i;
+			}
+		}
+		return measurementsOut;
+	}
+
+	/**
+	 * Fuses the measurements in a range of {@link #order} and sends the result.
+	 * @param consumer the consumer to send the fused measurement to
+	 * @param from the first index in the order array, inclusive
+	 * @param to the last index in the order array, exclusive
+	 * @return the number of measurements sent
+	 */
+	private int emit(VisionConsumer consumer, int from, int to) {
+		if (from >= to) {
+			return 0;
+		}
+
+		double linearWeightSum = 0.0;
+		double angularWeightSum = 0.0;
+		double xSum = 0.0;
+		double ySum = 0.0;
+		double timestampSum = 0.0;
+		double sinSum = 0.0;
+		double cosSum = 0.0;
+		for (int k = from; k < to; k++) {
+			int i = order[k];
+			double linearStdDev = Math.max(linearStdDevs[i], MIN_STD_DEV);
+			double angularStdDev = Math.max(angularStdDevs[i], MIN_STD_DEV);
+			double linearWeight = 1.0 / (linearStdDev * linearStdDev);
+			double angularWeight = 1.0 / (angularStdDev * angularStdDev);
+			linearWeightSum += linearWeight;
+			angularWeightSum += angularWeight;
+			xSum += linearWeight * xs[i];
+			ySum += linearWeight * ys[i];
+			timestampSum += linearWeight * timestamps[i];
+			// Average headings on the unit circle so they wrap correctly
+			sinSum += angularWeight * Math.sin(thetas[i]);
+			cosSum += angularWeight * Math.cos(thetas[i]);
+		}
+
+		double fusedLinearStdDev = Math.sqrt(1.0 / linearWeightSum);
+		double fusedAngularStdDev = Math.sqrt(1.0 / angularWeightSum);
+		consumer.accept(
+				xSum / linearWeightSum,
+				ySum / linearWeightSum,
+				Math.atan2(sinSum, cosSum),
+				timestampSum / linearWeightSum,
+				fusedLinearStdDev,
+				fusedLinearStdDev,
+				fusedAngularStdDev);
+		return 1;
+	}
+
+	/**
+	 * Fills {@link #order} with pending indices sorted by timestamp, and first by
+	 * camera if requested. Insertion sort is used since only a handful of
+	 * measurements arrive each cycle.
+	 * @param byCamera whether to group the indices by camera
+	 */
+	private void sort(boolean byCamera) {
+		for (int i = 0; i < size; i++) {
+			int index = i;
+			int j = i - 1;
+			while (j >= 0 && comesAfter(order[j], index, byCamera)) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = index;
+		}
+	}
+
+	private boolean comesAfter(int a, int b, boolean byCamera) {
+		if (byCamera && cameras[a] != cameras[b]) {
+			return cameras[a] > cameras[b];
+		}
+		return timestamps[a] > timestamps[b];
+	}
+
+	private void grow() {
+		int capacity = xs.length * 2;
+		cameras = Arrays.copyOf(cameras, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		thetas = Arrays.copyOf(thetas, capacity);
+		timestamps = Arrays.copyOf(timestamps, capacity);
+		linearStdDevs = Arrays.copyOf(linearStdDevs, capacity);
+		angularStdDevs = Arrays.copyOf(angularStdDevs, capacity);
+		order = Arrays.copyOf(order, capacity);
+	}
+}
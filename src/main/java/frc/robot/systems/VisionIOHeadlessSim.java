@@ -0,0 +1,395 @@
+package frc.robot.systems;
+
+import static frc.robot.Constants.VisionConstants.SIM_CAMERA_DIAGONAL_FOV_DEG;
+import static frc.robot.Constants.VisionConstants.SIM_CAMERA_FPS;
+import static frc.robot.Constants.VisionConstants.SIM_CAMERA_HEIGHT_PX;
+import static frc.robot.Constants.VisionConstants.SIM_CAMERA_WIDTH_PX;
+import static frc.robot.Constants.VisionConstants.MAX_POSE_OBSERVATIONS_PER_CYCLE;
+import static frc.robot.Constants.VisionConstants.SIM_ANGULAR_NOISE_AT_1M;
+import static frc.robot.Constants.VisionConstants.SIM_LATENCY_MS;
+import static frc.robot.Constants.VisionConstants.SIM_LATENCY_STD_DEV_MS;
+import static frc.robot.Constants.VisionConstants.SIM_LINEAR_NOISE_AT_1M;
+import static frc.robot.Constants.VisionConstants.SIM_MAX_AMBIGUITY;
+import static frc.robot.Constants.VisionConstants.SIM_MAX_TAG_DISTANCE;
+import static frc.robot.Constants.VisionConstants.SIM_MIN_TAG_AREA_PX;
+import static frc.robot.Constants.VisionConstants.TAG_SIZE_METERS;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.TagTable;
+
+/**
+ * Lightweight camera simulation that produces pose observations directly.
+ *
+ * Unlike {@link VisionIOPhotonPoseEstimatorSim}, nothing is rendered and no
+ * video streams are published. Each frame projects the corners of every tag
+ * through a pinhole camera model, keeps the tags that land fully inside the
+ * image, and perturbs the true robot pose with noise that grows with distance.
+ * Frames are produced at a fixed rate from the robot pose at each capture time,
+ * and each one is delivered once its own random latency has elapsed. The cost
+ * per loop is a few hundred arithmetic operations per tag, and
+ * VisionSimBenchmark compares it with the PhotonVision VisionSystemSim path.
+ * Frames and output arrays are reused, so only the observations themselves are
+ * allocated.
+ */
+public class VisionIOHeadlessSim implements VisionIO {
+	private static final int CORNERS = 4;
+	private static final double SECONDS_PER_MILLI = 0.001;
+	// Frames further behind than this are skipped instead of caught up on
+	private static final double MAX_CATCH_UP_SECS = 1.0;
+	private static final int LOG2_BITS_PER_WORD = 6;
+	private static final int TAG_MASK_WORDS = (TagTable.MAX_ID >>> LOG2_BITS_PER_WORD) + 1;
+
+	private final PoseSource poseSource;
+	private final Random random;
+
+	// Robot to camera transform: translation and rotation matrix
+	private final double mountX;
+	private final double mountY;
+	private final double mountZ;
+	private final double[][] mountRotation;
+
+	// Pinhole camera model
+	private final double focalLengthPx;
+	private final double centerXPx;
+	private final double centerYPx;
+
+	// Tag geometry in field coordinates, precomputed once
+	private final double[][] cornerXs = new double[TagTable.TAG_COUNT][CORNERS];
+	private final double[][] cornerYs = new double[TagTable.TAG_COUNT][CORNERS];
+	private final double[][] cornerZs = new double[TagTable.TAG_COUNT][CORNERS];
+	private final double[][] normals = new double[TagTable.TAG_COUNT][];
+	private final double[][] centers = new double[TagTable.TAG_COUNT][];
+
+	// Scratch space for projected corners
+	private final double[] us = new double[CORNERS];
+	private final double[] vs = new double[CORNERS];
+	private final double[] robotPose = new double[3];
+
+	// Captured frames waiting for their latency to elapse, and delivered frames to reuse
+	private final ArrayDeque<PendingFrame> pendingFrames = new ArrayDeque<>();
+	private final ArrayDeque<PendingFrame> freeFrames = new ArrayDeque<>();
+	private double nextFrameTime = Double.NaN;
+
+	// Reused every cycle so updateInputs does not allocate
+	private final long[] tagIdMask = new long[TAG_MASK_WORDS];
+	private final int[][] tagIdArrays = new int[TagTable.TAG_COUNT + 1][];
+	private PoseObservation[] observationBuffer =
+		new PoseObservation[MAX_POSE_OBSERVATIONS_PER_CYCLE];
+	private PoseObservation[][] observationArrays =
+		new PoseObservation[MAX_POSE_OBSERVATIONS_PER_CYCLE + 1][];
+	private int observationCount = 0;
+
+	/** Looks up the robot's true pose at a past time. */
+	@FunctionalInterface
+	public interface PoseSource {
+		/**
+		 * Finds the robot pose at a time.
+		 * @param timestamp the FPGA timestamp in seconds
+		 * @param out array of three elements to receive x, y and heading in meters
+		 *		and radians
+		 * @return true if a pose was written to out
+		 */
+		boolean poseAt(double timestamp, double[] out);
+	}
+
+	/** A frame that has been captured but not yet delivered. */
+	private static final class PendingFrame {
+		private double deliveryTime;
+		private PoseObservation observation;
+		private final long[] tagIdMask = new long[TAG_MASK_WORDS];
+	}
+
+	/**
+	 * Creates a new VisionIOHeadlessSim.
+	 * @param name the name of the camera, used to seed its noise
+	 * @param roboToCamera the transform from the robot to the camera
+	 * @param truePoseSource looks up the robot's true pose at each capture time
+	 * @param seed the base seed for the noise model
+	 */
+	public VisionIOHeadlessSim(
+			String name,
+			Transform3d roboToCamera,
+			PoseSource truePoseSource,
+			long seed) {
+		this.poseSource = truePoseSource;
+		this.random = new Random(seed ^ name.hashCode());
+		mountX = roboToCamera.getX();
+		mountY = roboToCamera.getY();
+		mountZ = roboToCamera.getZ();
+		mountRotation = rotationMatrix(roboToCamera.getRotation());
+
+		double diagonalPx = Math.hypot(SIM_CAMERA_WIDTH_PX, SIM_CAMERA_HEIGHT_PX);
+		focalLengthPx = diagonalPx / 2.0
+			/ Math.tan(Math.toRadians(SIM_CAMERA_DIAGONAL_FOV_DEG) / 2.0);
+		centerXPx = SIM_CAMERA_WIDTH_PX / 2.0;
+		centerYPx = SIM_CAMERA_HEIGHT_PX / 2.0;
+
+		// Tags face along the +X axis of their own frame
+		double half = TAG_SIZE_METERS / 2.0;
+		double[] cornerOffsetsY = {-half, half, half, -half};
+		double[] cornerOffsetsZ = {-half, -half, half, half};
+		for (int t = 0; t < TagTable.TAG_COUNT; t++) {
+			Pose3d tagPose = TagTable.getPose3d(TagTable.getId(t));
+			for (int c = 0; c < CORNERS; c++) {
+				Translation3d corner =
+					new Translation3d(0.0, cornerOffsetsY[c], cornerOffsetsZ[c])
+					.rotateBy(tagPose.getRotation())
+					.plus(tagPose.getTranslation());
+				cornerXs[t][c] = corner.getX();
+				cornerYs[t][c] = corner.getY();
+				cornerZs[t][c] = corner.getZ();
+			}
+			Translation3d normal =
+				new Translation3d(1.0, 0.0, 0.0).rotateBy(tagPose.getRotation());
+			normals[t] = new double[] {normal.getX(), normal.getY(), normal.getZ()};
+			centers[t] = new double[] {tagPose.getX(), tagPose.getY(), tagPose.getZ()};
+		}
+	}
+
+	@Override
+	public void updateInputs(VisionIOInputs inputs) {
+		inputs.connected = true;
+
+		double now = Timer.getFPGATimestamp();
+		if (Double.isNaN(nextFrameTime) || now - nextFrameTime > MAX_CATCH_UP_SECS) {
+			nextFrameTime = now;
+		}
+
+		// Capture every frame that would have been taken since the last loop
+		while (nextFrameTime <= now) {
+			captureFrame(nextFrameTime);
+			nextFrameTime += 1.0 / SIM_CAMERA_FPS;
+		}
+
+		// Deliver every frame whose latency has elapsed. Latency is random, so a frame
+		// can be due before an earlier one, and a slow frame must not hold it back.
+		// Frames still waiting are put back in capture order.
+		observationCount = 0;
+		for (int i = pendingFrames.size(); i > 0; i--) {
+			PendingFrame frame = pendingFrames.poll();
+			if (frame.deliveryTime > now) {
+				pendingFrames.add(frame);
+				continue;
+			}
+			addObservation(frame.observation);
+			for (int w = 0; w < TAG_MASK_WORDS; w++) {
+				tagIdMask[w] |= frame.tagIdMask[w];
+			}
+			frame.observation = null;
+			freeFrames.add(frame);
+		}
+
+		inputs.poseObservations = takeObservations();
+		inputs.tagIds = takeTagIds();
+	}
+
+	/**
+	 * Adds a pose observation for this cycle, growing the buffer only if more
+	 * observations arrive than it has ever held.
+	 * @param observation the observation to add
+	 */
+	private void addObservation(PoseObservation observation) {
+		if (observationCount == observationBuffer.length) {
+			int capacity = observationBuffer.length * 2;
+			observationBuffer = Arrays.copyOf(observationBuffer, capacity);
+			observationArrays = Arrays.copyOf(observationArrays, capacity + 1);
+		}
+		observationBuffer[observationCount++] = observation;
+	}
+
+	/**
+	 * Returns this cycle's observations as an exact-length array. Arrays are
+	 * cached by length and reused on later cycles.
+	 * @return the observations
+	 */
+	private PoseObservation[] takeObservations() {
+		PoseObservation[] output = observationArrays[observationCount];
+		if (output == null) {
+			output = new PoseObservation[observationCount];
+			observationArrays[observationCount] = output;
+		}
+		System.arraycopy(observationBuffer, 0, output, 0, observationCount);
+		Arrays.fill(observationBuffer, 0, observationCount, null);
+		return output;
+	}
+
+	/**
+	 * Returns the tags seen in this cycle's frames in ascending order, without
+	 * duplicates, and clears the mask. Arrays are cached by length and reused on
+	 * later cycles.
+	 * @return the fiducial IDs
+	 */
+	private int[] takeTagIds() {
+		int count = 0;
+		for (long word : tagIdMask) {
+			count += Long.bitCount(word);
+		}
+
+		int[] output = tagIdArrays[count];
+		if (output == null) {
+			output = new int[count];
+			tagIdArrays[count] = output;
+		}
+
+		int index = 0;
+		for (int w = 0; w < tagIdMask.length; w++) {
+			long word = tagIdMask[w];
+			while (word != 0) {
+				output[index++] = (w << LOG2_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+			tagIdMask[w] = 0;
+		}
+		return output;
+	}
+
+	/**
+	 * Projects every tag into the camera from the robot pose at the capture time
+	 * and queues a pose observation if any tags are visible.
+	 * @param captureTime the FPGA timestamp of the frame
+	 */
+	private void captureFrame(double captureTime) {
+		if (!poseSource.poseAt(captureTime, robotPose)) {
+			return;
+		}
+		double robotX = robotPose[0];
+		double robotY = robotPose[1];
+		double robotTheta = robotPose[2];
+		double cos = Math.cos(robotTheta);
+		double sin = Math.sin(robotTheta);
+
+		// Camera pose is the robot pose, flat on the floor, followed by the mount
+		double camX = robotX + cos * mountX - sin * mountY;
+		double camY = robotY + sin * mountX + cos * mountY;
+		double camZ = mountZ;
+
+		// Camera rotation matrix is the robot yaw applied to the mount rotation
+		double[][] m = mountRotation;
+		double r00 = cos * m[0][0] - sin * m[1][0];
+		double r01 = cos * m[0][1] - sin * m[1][1];
+		double r02 = cos * m[0][2] - sin * m[1][2];
+		double r10 = sin * m[0][0] + cos * m[1][0];
+		double r11 = sin * m[0][1] + cos * m[1][1];
+		double r12 = sin * m[0][2] + cos * m[1][2];
+		double r20 = m[2][0];
+		double r21 = m[2][1];
+		double r22 = m[2][2];
+
+		PendingFrame frame = freeFrames.isEmpty() ? new PendingFrame() : freeFrames.poll();
+		Arrays.fill(frame.tagIdMask, 0);
+		int visibleCount = 0;
+		double totalDistance = 0.0;
+		for (int t = 0; t < TagTable.TAG_COUNT; t++) {
+			double toCameraX = camX - centers[t][0];
+			double toCameraY = camY - centers[t][1];
+			double toCameraZ = camZ - centers[t][2];
+
+			// Skip tags facing away from the camera
+			if (toCameraX * normals[t][0] + toCameraY * normals[t][1]
+					+ toCameraZ * normals[t][2] <= 0.0) {
+				continue;
+			}
+
+			double distance = Math.sqrt(
+				toCameraX * toCameraX + toCameraY * toCameraY + toCameraZ * toCameraZ);
+			if (distance > SIM_MAX_TAG_DISTANCE) {
+				continue;
+			}
+
+			// Project each corner, camera frame is X forward, Y left, Z up
+			boolean inImage = true;
+			for (int c = 0; c < CORNERS && inImage; c++) {
+				double dx = cornerXs[t][c] - camX;
+				double dy = cornerYs[t][c] - camY;
+				double dz = cornerZs[t][c] - camZ;
+				double forward = r00 * dx + r10 * dy + r20 * dz;
+				double left = r01 * dx + r11 * dy + r21 * dz;
+				double up = r02 * dx + r12 * dy + r22 * dz;
+				if (forward <= 0.0) {
+					inImage = false;
+					break;
+				}
+				us[c] = centerXPx - focalLengthPx * left / forward;
+				vs[c] = centerYPx - focalLengthPx * up / forward;
+				inImage = us[c] >= 0.0 && us[c] <= SIM_CAMERA_WIDTH_PX
+					&& vs[c] >= 0.0 && vs[c] <= SIM_CAMERA_HEIGHT_PX;
+			}
+			if (!inImage || polygonArea() < SIM_MIN_TAG_AREA_PX) {
+				continue;
+			}
+
+			int id = TagTable.getId(t);
+			frame.tagIdMask[id >>> LOG2_BITS_PER_WORD] |= 1L << id;
+			visibleCount++;
+			totalDistance += distance;
+		}
+
+		if (visibleCount == 0) {
+			freeFrames.add(frame);
+			return;
+		}
+
+		// Noise grows with the square of distance and shrinks with more tags
+		double averageDistance = totalDistance / visibleCount;
+		double noiseFactor = averageDistance * averageDistance / visibleCount;
+		double linearNoise = SIM_LINEAR_NOISE_AT_1M * noiseFactor;
+		double angularNoise = SIM_ANGULAR_NOISE_AT_1M * noiseFactor;
+		Pose3d measuredPose = new Pose3d(
+			robotX + random.nextGaussian() * linearNoise,
+			robotY + random.nextGaussian() * linearNoise,
+			random.nextGaussian() * linearNoise,
+			new Rotation3d(0.0, 0.0, robotTheta + random.nextGaussian() * angularNoise));
+		double ambiguity = visibleCount == 1 ? random.nextDouble() * SIM_MAX_AMBIGUITY : 0.0;
+
+		double latency = Math.max(
+			0.0, SIM_LATENCY_MS + random.nextGaussian() * SIM_LATENCY_STD_DEV_MS)
+			* SECONDS_PER_MILLI;
+		frame.deliveryTime = captureTime + latency;
+		frame.observation = new PoseObservation(
+			captureTime,
+			measuredPose,
+			ambiguity,
+			visibleCount,
+			averageDistance,
+			PoseObservationType.PHOTONVISION);
+		pendingFrames.add(frame);
+	}
+
+	/**
+	 * Returns the area of the projected tag using the shoelace formula.
+	 * @return the area in square pixels
+	 */
+	private double polygonArea() {
+		double area = 0.0;
+		for (int c = 0; c < CORNERS; c++) {
+			int next = (c + 1) % CORNERS;
+			area += us[c] * vs[next] - us[next] * vs[c];
+		}
+		return Math.abs(area) / 2.0;
+	}
+
+	/**
+	 * Converts a rotation to a rotation matrix, indexed by row then column.
+	 * @param rotation the rotation
+	 * @return the matrix
+	 */
+	private static double[][] rotationMatrix(Rotation3d rotation) {
+		var q = rotation.getQuaternion();
+		double qw = q.getW();
+		double qx = q.getX();
+		double qy = q.getY();
+		double qz = q.getZ();
+		return new double[][] {
+			{1 - 2 * (qy * qy + qz * qz), 2 * (qx * qy - qz * qw), 2 * (qx * qz + qy * qw)},
+			{2 * (qx * qy + qz * qw), 1 - 2 * (qx * qx + qz * qz), 2 * (qy * qz - qx * qw)},
+			{2 * (qx * qz - qy * qw), 2 * (qy * qz + qx * qw), 1 - 2 * (qx * qx + qy * qy)}};
+	}
+}
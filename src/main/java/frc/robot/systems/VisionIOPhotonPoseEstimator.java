@@ -1,84 +1,315 @@
 package frc.robot.systems;
 
-import static frc.robot.Constants.VisionConstants.TAG_LAYOUT;
+import static frc.robot.Constants.VisionConstants.EVENT_DRIVEN_INGEST;
+import static frc.robot.Constants.VisionConstants.INGEST_QUEUE_CAPACITY;
+import static frc.robot.Constants.VisionConstants.MAX_POSE_OBSERVATIONS_PER_CYCLE;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.littletonrobotics.junction.Logger;
 import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
 
 import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.util.SpscQueue;
+import frc.robot.util.TagTable;
 
 public class VisionIOPhotonPoseEstimator implements VisionIO {
+	private static final double RESULT_PERIOD_SECS = 0.01;
+	private static final double SECONDS_TO_MILLIS = 1000.0;
+	private static final int LOG2_BITS_PER_WORD = 6;
+
 	private final PhotonCamera camera;
 	private final PhotonPoseEstimator poseEstimator;
 	private final Transform3d robotToCamera;
 
+	// Event-driven ingest, only used when enabled. The subscriber is held so the
+	// subscription stays alive for the listener.
+	private final SpscQueue<IngestedObservation> ingestQueue;
+	private final RawSubscriber resultSubscriber;
+	private final AtomicLong ingestDropped = new AtomicLong();
+
+	private final String latencyKey;
+	private final String ingestDroppedKey;
+
+	// Reused every cycle so updateInputs does not allocate
+	private final long[] tagIdMask = new long[(TagTable.MAX_ID >>> LOG2_BITS_PER_WORD) + 1];
+	private final int[][] tagIdArrays = new int[TagTable.TAG_COUNT + 1][];
+	private PoseObservation[] observationBuffer =
+		new PoseObservation[MAX_POSE_OBSERVATIONS_PER_CYCLE];
+	private PoseObservation[][] observationArrays =
+		new PoseObservation[MAX_POSE_OBSERVATIONS_PER_CYCLE + 1][];
+	private int observationCount = 0;
+
+	/**
+	 * A pose observation produced on the NetworkTables listener thread, along with
+	 * the tags it used.
+	 */
+	private static record IngestedObservation(PoseObservation observation, int[] tagIds) {
+	}
+
 	/**
 	 * Creates a new VisionIOPhotonPoseEstimator.
 	 * @param name The name of the camera.
 	 * @param roboToCamera The transform from the camera to the robot.
 	 */
 	public VisionIOPhotonPoseEstimator(String name, Transform3d roboToCamera) {
+		this(name, roboToCamera, EVENT_DRIVEN_INGEST);
+	}
+
+	/**
+	 * Creates a new VisionIOPhotonPoseEstimator.
+	 * @param name The name of the camera.
+	 * @param roboToCamera The transform from the camera to the robot.
+	 * @param eventDriven Whether to estimate poses as soon as results arrive over
+	 *		NetworkTables instead of polling the camera once per loop.
+	 */
+	public VisionIOPhotonPoseEstimator(
+			String name, Transform3d roboToCamera, boolean eventDriven) {
 		camera = new PhotonCamera(name);
 		this.robotToCamera = roboToCamera;
 		poseEstimator = new PhotonPoseEstimator(
-			TAG_LAYOUT,
+			TagTable.LAYOUT,
 			PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
 			robotToCamera
 		);
+		latencyKey = "Vision/" + name + "/CaptureToFusionLatencyMs";
+		ingestDroppedKey = "Vision/" + name + "/IngestDropped";
+
+		if (eventDriven) {
+			ingestQueue = new SpscQueue<>(INGEST_QUEUE_CAPACITY);
 
+			// Subscribe to the same topic PhotonCamera reads from, and run the pose
+			// estimator on the NetworkTables listener thread as each result arrives
+			var instance = NetworkTableInstance.getDefault();
+			resultSubscriber = instance.getTable("photonvision")
+				.getSubTable(name)
+				.getRawTopic("rawBytes")
+				.subscribe(
+					PhotonPipelineResult.photonStruct.getTypeString(),
+					new byte[] {},
+					PubSubOption.periodic(RESULT_PERIOD_SECS),
+					PubSubOption.sendAll(true));
+			instance.addListener(
+				resultSubscriber,
+				EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+				this::onResult);
+		} else {
+			ingestQueue = null;
+			resultSubscriber = null;
+		}
 	}
 
 	@Override
 	public void updateInputs(VisionIOInputs inputs) {
+		if (ingestQueue != null) {
+			updateInputs(inputs, null);
+		} else {
+			updateInputs(inputs, camera.getAllUnreadResults());
+		}
+	}
+
+	/**
+	 * Updates the inputs from a set of pipeline results. Separated from
+	 * {@link #updateInputs(VisionIOInputs)} so synthetic results can be fed in.
+	 * @param inputs the inputs to update
+	 * @param results the unread pipeline results, or null to drain the
+	 *		event-driven ingest queue instead
+	 */
+	void updateInputs(VisionIOInputs inputs, List<PhotonPipelineResult> results) {
 		inputs.connected = camera.isConnected();
 
-		Optional<EstimatedRobotPose> estPose = Optional.empty();
-		Set<Short> tagIds = new HashSet<>();
-		List<PoseObservation> poseObservations = new LinkedList<>();
-		for (var result : camera.getAllUnreadResults()) {
-			estPose = poseEstimator.update(result);
+		// Latency runs from capture until the observation is handed to fusion here
+		observationCount = 0;
+		double latestLatencySeconds = Double.NaN;
+		if (results == null) {
+			Logger.recordOutput(ingestDroppedKey, ingestDropped.get());
 
-			if (estPose.isPresent()) {
-				var pose = estPose.get();
+			// Drain observations already estimated on the listener thread
+			IngestedObservation ingested;
+			while ((ingested = ingestQueue.poll()) != null) {
+				addObservation(ingested.observation());
+				int[] ids = ingested.tagIds();
+				for (int i = 0; i < ids.length; i++) {
+					markTagId(ids[i]);
+				}
+				latestLatencySeconds =
+					Timer.getFPGATimestamp() - ingested.observation().timestamp();
+			}
+		} else {
+			for (int r = 0; r < results.size(); r++) {
+				var result = results.get(r);
+				var estPose = estimate(result);
 
-				double totalTagDistance = 0;
-				for (var target : pose.targetsUsed) {
-					totalTagDistance += target.bestCameraToTarget.getTranslation().getNorm();
-					tagIds.add((short) target.getFiducialId());
+				if (estPose.isPresent()) {
+					var pose = estPose.get();
+					for (int i = 0; i < pose.targetsUsed.size(); i++) {
+						markTagId(pose.targetsUsed.get(i).getFiducialId());
+					}
+					addObservation(toObservation(result, pose));
+					latestLatencySeconds =
+						Timer.getFPGATimestamp() - result.getTimestampSeconds();
 				}
-				double averageTagDistance = totalTagDistance / pose.targetsUsed.size();
-
-				poseObservations.add(
-					new PoseObservation(
-						result.getTimestampSeconds(),
-						estPose.get().estimatedPose,
-						estPose.get().targetsUsed.get(0).poseAmbiguity,
-						estPose.get().targetsUsed.size(),
-						averageTagDistance,
-						PoseObservationType.PHOTONVISION
-					)
-				);
 			}
 		}
 
-		inputs.poseObservations = new PoseObservation[poseObservations.size()];
-		for (int i = 0; i < poseObservations.size(); i++) {
-			inputs.poseObservations[i] = poseObservations.get(i);
+		if (!Double.isNaN(latestLatencySeconds)) {
+			Logger.recordOutput(latencyKey, latestLatencySeconds * SECONDS_TO_MILLIS);
+		}
+
+		inputs.poseObservations = takeObservations();
+		inputs.tagIds = takeTagIds();
+	}
+
+	/**
+	 * Adds a pose observation for this cycle, growing the buffer only if more
+	 * observations arrive than it has ever held.
+	 * @param observation the observation to add
+	 */
+	private void addObservation(PoseObservation observation) {
+		if (observationCount == observationBuffer.length) {
+			int capacity = observationBuffer.length * 2;
+			observationBuffer = Arrays.copyOf(observationBuffer, capacity);
+			observationArrays = Arrays.copyOf(observationArrays, capacity + 1);
+		}
+		observationBuffer[observationCount++] = observation;
+	}
+
+	/**
+	 * Returns this cycle's observations as an exact-length array. Arrays are
+	 * cached by length and reused on later cycles.
+	 * @return the observations
+	 */
+	private PoseObservation[] takeObservations() {
+		PoseObservation[] output = observationArrays[observationCount];
+		if (output == null) {
+			output = new PoseObservation[observationCount];
+			observationArrays[observationCount] = output;
+		}
+		System.arraycopy(observationBuffer, 0, output, 0, observationCount);
+		return output;
+	}
+
+	/**
+	 * Records that a tag was used this cycle. Tags that are not on the field are
+	 * ignored.
+	 * @param id the fiducial ID
+	 */
+	private void markTagId(int id) {
+		if (TagTable.contains(id)) {
+			tagIdMask[id >>> LOG2_BITS_PER_WORD] |= 1L << id;
+		}
+	}
+
+	/**
+	 * Returns the tags used this cycle in ascending order and clears the mask.
+	 * Arrays are cached by length and reused on later cycles.
+	 * @return the fiducial IDs
+	 */
+	private int[] takeTagIds() {
+		int count = 0;
+		for (long word : tagIdMask) {
+			count += Long.bitCount(word);
+		}
+
+		int[] output = tagIdArrays[count];
+		if (output == null) {
+			output = new int[count];
+			tagIdArrays[count] = output;
+		}
+
+		int index = 0;
+		for (int w = 0; w < tagIdMask.length; w++) {
+			long word = tagIdMask[w];
+			while (word != 0) {
+				output[index++] = (w << LOG2_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+			tagIdMask[w] = 0;
+		}
+		return output;
+	}
+
+	/**
+	 * Handles a new pipeline result published by the camera. This runs on the
+	 * NetworkTables listener thread, which is the only thread that touches the
+	 * pose estimator while event-driven ingest is enabled.
+	 * @param event the NetworkTables value event
+	 */
+	private void onResult(NetworkTableEvent event) {
+		var valueData = event.valueData;
+		if (valueData == null || !valueData.value.isRaw()) {
+			return;
+		}
+
+		var result = PhotonPipelineResult.photonStruct.unpack(
+			new Packet(valueData.value.getRaw()));
+		result.setReceiveTimestampMicros(valueData.value.getTime());
+
+		var estPose = estimate(result);
+		if (estPose.isEmpty()) {
+			return;
 		}
 
-		inputs.tagIds = new int[tagIds.size()];
-		int i = 0;
-		for (int id : tagIds) {
-			inputs.tagIds[i++]  = id;
+		var pose = estPose.get();
+		int[] usedTagIds = new int[pose.targetsUsed.size()];
+		for (int i = 0; i < usedTagIds.length; i++) {
+			usedTagIds[i] = pose.targetsUsed.get(i).getFiducialId();
 		}
+		if (!ingestQueue.offer(new IngestedObservation(toObservation(result, pose), usedTagIds))) {
+			// The main loop has fallen behind, updateInputs logs how many were lost
+			ingestDropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Runs a pipeline result through the pose estimator.
+	 * @param result the pipeline result
+	 * @return the estimated robot pose, if one could be computed
+	 */
+	private Optional<EstimatedRobotPose> estimate(PhotonPipelineResult result) {
+		return poseEstimator.update(result);
+	}
+
+	/**
+	 * Converts an estimated robot pose into a pose observation.
+	 * @param result the pipeline result the pose was estimated from
+	 * @param pose the estimated robot pose
+	 * @return the pose observation
+	 */
+	private static PoseObservation toObservation(
+			PhotonPipelineResult result, EstimatedRobotPose pose) {
+		double totalTagDistance = 0;
+		for (int i = 0; i < pose.targetsUsed.size(); i++) {
+			var cameraToTarget = pose.targetsUsed.get(i).bestCameraToTarget;
+			double x = cameraToTarget.getX();
+			double y = cameraToTarget.getY();
+			double z = cameraToTarget.getZ();
+			totalTagDistance += Math.sqrt(x * x + y * y + z * z);
+		}
+		double averageTagDistance = totalTagDistance / pose.targetsUsed.size();
+
+		return new PoseObservation(
+			result.getTimestampSeconds(),
+			pose.estimatedPose,
+			pose.targetsUsed.get(0).poseAmbiguity,
+			pose.targetsUsed.size(),
+			averageTagDistance,
+			PoseObservationType.PHOTONVISION
+		);
 	}
 
 	/**
@@ -90,7 +321,8 @@ public class VisionIOPhotonPoseEstimator implements VisionIO {
 	}
 
 	/**
-	 * Returns the pose estimator.
+	 * Returns the pose estimator. With event-driven ingest enabled, the estimator
+	 * is updated from the NetworkTables listener thread.
 	 * @return The pose estimator
 	 */
 	public PhotonPoseEstimator getPoseEstimator() {
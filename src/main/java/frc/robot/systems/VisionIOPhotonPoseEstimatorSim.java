@@ -1,48 +1,39 @@
 package frc.robot.systems;
 
-import static frc.robot.Constants.VisionConstants.TAG_LAYOUT;
-
-import java.util.function.Supplier;
-
 import org.photonvision.simulation.PhotonCameraSim;
 import org.photonvision.simulation.SimCameraProperties;
-import org.photonvision.simulation.VisionSystemSim;
 
-import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.util.TagTable;
 
 public class VisionIOPhotonPoseEstimatorSim extends VisionIOPhotonPoseEstimator {
-	private static VisionSystemSim visionSystem;
-	private final Supplier<Pose2d> poseSupplier;
+	private final VisionSimCoordinator coordinator;
 	private final PhotonCameraSim cameraSim;
 
 	/**
 	 * Creates a new VisionIOPhotonPoseEstimatorSim.
 	 * @param name the name of the camera
 	 * @param robotToCamera the transform from the robot to the camera
-	 * @param pose2dSupplier a supplier for the robot's pose
+	 * @param simCoordinator the coordinator that owns the shared vision system
 	 */
 	public VisionIOPhotonPoseEstimatorSim(
 		String name,
 		Transform3d robotToCamera,
-		Supplier<Pose2d> pose2dSupplier
+		VisionSimCoordinator simCoordinator
 	) {
-		super(name, robotToCamera);
-		this.poseSupplier = pose2dSupplier;
-
-		if (visionSystem == null) {
-			visionSystem = new VisionSystemSim("main");
-			visionSystem.addAprilTags(TAG_LAYOUT);
-		}
+		// Results are published by the sim update below, so read them in the same loop
+		super(name, robotToCamera, false);
+		this.coordinator = simCoordinator;
 
 		var camProps = new SimCameraProperties();
-		cameraSim = new PhotonCameraSim(getCamera(), camProps, TAG_LAYOUT);
-		visionSystem.addCamera(cameraSim, robotToCamera);
+		cameraSim = new PhotonCameraSim(getCamera(), camProps, TagTable.LAYOUT);
+		coordinator.addCamera(cameraSim, robotToCamera);
 	}
 
 	@Override
 	public void updateInputs(VisionIOInputs inputs) {
-		visionSystem.update(poseSupplier.get());
+		// Only the first camera each cycle actually runs the simulation
+		coordinator.update();
 		super.updateInputs(inputs);
 	}
 }
@@ -0,0 +1,63 @@
+package frc.robot.systems;
+
+import java.util.function.Supplier;
+
+import org.littletonrobotics.junction.Logger;
+import org.photonvision.simulation.PhotonCameraSim;
+import org.photonvision.simulation.VisionSystemSim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.util.TagTable;
+
+/**
+ * Owns the shared PhotonVision {@link VisionSystemSim} and makes sure it is
+ * updated exactly once per robot cycle, no matter how many simulated cameras
+ * read from it. Updating the system renders and publishes results for every
+ * camera at once, so each camera IO only needs to read its own results.
+ */
+public class VisionSimCoordinator {
+	private final VisionSystemSim visionSystem;
+	private final Supplier<Pose2d> poseSupplier;
+	private long lastUpdateTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Creates a new VisionSimCoordinator.
+	 * @param pose2dSupplier a supplier for the robot's simulated pose
+	 */
+	public VisionSimCoordinator(Supplier<Pose2d> pose2dSupplier) {
+		this.poseSupplier = pose2dSupplier;
+		visionSystem = new VisionSystemSim("main");
+		visionSystem.addAprilTags(TagTable.LAYOUT);
+	}
+
+	/**
+	 * Adds a simulated camera to the shared vision system.
+	 * @param cameraSim the simulated camera
+	 * @param robotToCamera the transform from the robot to the camera
+	 */
+	public void addCamera(PhotonCameraSim cameraSim, Transform3d robotToCamera) {
+		visionSystem.addCamera(cameraSim, robotToCamera);
+	}
+
+	/**
+	 * Updates the shared vision system with the current robot pose, unless it has
+	 * already been updated during this robot cycle.
+	 */
+	public void update() {
+		long timestamp = Logger.getTimestamp();
+		if (timestamp == lastUpdateTimestamp) {
+			return;
+		}
+		lastUpdateTimestamp = timestamp;
+		visionSystem.update(poseSupplier.get());
+	}
+
+	/**
+	 * Returns the shared vision system.
+	 * @return the vision system
+	 */
+	public VisionSystemSim getVisionSystem() {
+		return visionSystem;
+	}
+}
@@ -0,0 +1,280 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+import org.littletonrobotics.junction.networktables.NT4Publisher;
+
+/**
+ * Publishes a limited set of logged keys to NetworkTables within a bandwidth
+ * budget, for use on the field where radio bandwidth is capped.
+ *
+ * Only keys matching an allowlist rule are published. Each rule gives its keys a
+ * priority and a maximum publish rate. Every loop, keys whose values changed are
+ * considered highest priority first and published while the bytes-per-second
+ * budget has room, so when the budget runs out the lowest priority keys are the
+ * ones dropped. Other receivers, such as a WPILOGWriter, still get every key.
+ *
+ * The NT4Publisher only sends values that changed since the table it was last
+ * given, so every table passed to it carries the last published value of every
+ * key and only the values chosen this loop differ. Struct schemas under .schema/
+ * are always passed through outside the budget, since dashboards cannot decode
+ * struct topics without them.
+ */
+public final class BudgetedNT4Publisher implements LogDataReceiver {
+	private static final double MICROS_PER_SECOND = 1e6;
+	// Longest loop gap credited to the budget, so a stall cannot bank a burst
+	private static final double MAX_CREDIT_SECS = 0.1;
+	// Rough NT4 framing per value: topic id, timestamp, type and length
+	private static final int VALUE_OVERHEAD_BYTES = 12;
+	private static final int STATS_WINDOW_MICROS = 1_000_000;
+	private static final String SCHEMA_PREFIX = ".schema/";
+
+	private final LogDataReceiver publisher;
+	private final double budgetBytesPerSecond;
+	private final List<Rule> rules = new ArrayList<>();
+
+	// Every key seen so far, and the allowed ones sorted highest priority first
+	private final Map<String, Channel> channels = new HashMap<>();
+	private final List<Channel> allowed = new ArrayList<>();
+	private final List<Channel> schemas = new ArrayList<>();
+
+	private double creditBytes = 0.0;
+	private long lastTimestamp = -1;
+
+	// Reported under NTBudget/ once per stats window
+	private long windowStart = -1;
+	private long windowBytes = 0;
+	private long windowDropped = 0;
+	private double bytesPerSecond = 0.0;
+	private long droppedPerWindow = 0;
+
+	/** An allowlist entry. */
+	private static final class Rule {
+		private final Pattern pattern;
+		private final int priority;
+		private final long minIntervalMicros;
+
+		private Rule(String keyPattern, int keyPriority, double maxRateHz) {
+			this.pattern = LogPolicy.compileKeyPattern(keyPattern);
+			this.priority = keyPriority;
+			this.minIntervalMicros = (long) (MICROS_PER_SECOND / maxRateHz);
+		}
+	}
+
+	/** Publishing state for one key. */
+	private static final class Channel {
+		private final String key;
+		private final Rule rule; // null if the key is not allowed
+		private LogValue lastValue;
+		private long lastPublish = Long.MIN_VALUE;
+
+		private Channel(String tableKey, Rule keyRule) {
+			this.key = tableKey;
+			this.rule = keyRule;
+		}
+	}
+
+	/**
+	 * Creates a new BudgetedNT4Publisher that publishes nothing until keys are
+	 * allowed.
+	 * @param budget the most bytes to publish per second
+	 */
+	public BudgetedNT4Publisher(double budget) {
+		this(budget, new NT4Publisher());
+	}
+
+	/**
+	 * Creates a new BudgetedNT4Publisher that forwards to another receiver in
+	 * place of an NT4Publisher.
+	 * @param budget the most bytes to publish per second
+	 * @param downstream the receiver to forward the budgeted tables to
+	 */
+	BudgetedNT4Publisher(double budget, LogDataReceiver downstream) {
+		this.budgetBytesPerSecond = budget;
+		this.publisher = downstream;
+	}
+
+	/**
+	 * Allows keys to be published. Rules are checked in the order they are added
+	 * and the first match wins. Keys are matched without the leading slash, so
+	 * outputs start with RealOutputs/.
+	 * @param keyPattern the key prefix to match, where * matches any characters
+	 * @param priority the order to publish changed keys in, highest first
+	 * @param maxRateHz the most times per second to publish each matching key
+	 * @return this publisher, for chaining
+	 */
+	public BudgetedNT4Publisher allow(String keyPattern, int priority, double maxRateHz) {
+		rules.add(new Rule(keyPattern, priority, maxRateHz));
+		return this;
+	}
+
+	@Override
+	public void start() {
+		publisher.start();
+	}
+
+	@Override
+	public void end() {
+		publisher.end();
+	}
+
+	@Override
+	public void putTable(LogTable table) throws InterruptedException {
+		long now = table.getTimestamp();
+		Map<String, LogValue> values = table.getAll(true);
+		discoverKeys(values);
+
+		if (lastTimestamp >= 0) {
+			double elapsedSecs =
+				Math.min(MAX_CREDIT_SECS, (now - lastTimestamp) / MICROS_PER_SECOND);
+			creditBytes = Math.min(
+				creditBytes + budgetBytesPerSecond * elapsedSecs,
+				budgetBytesPerSecond * MAX_CREDIT_SECS);
+		}
+		lastTimestamp = now;
+
+		LogTable published = new LogTable(now);
+		for (int i = 0; i < schemas.size(); i++) {
+			Channel schema = schemas.get(i);
+			LogValue value = values.get(schema.key);
+			if (value != null) {
+				schema.lastValue = value;
+			}
+			published.put(schema.key, schema.lastValue);
+		}
+		for (int i = 0; i < allowed.size(); i++) {
+			Channel channel = allowed.get(i);
+			LogValue value = values.get(channel.key);
+			if (value != null && !value.equals(channel.lastValue)
+					&& now - channel.lastPublish >= channel.rule.minIntervalMicros) {
+				int cost = estimateBytes(value);
+				if (cost <= creditBytes) {
+					creditBytes -= cost;
+					windowBytes += cost;
+					channel.lastValue = value;
+					channel.lastPublish = now;
+				} else {
+					windowDropped++;
+				}
+			}
+			if (channel.lastValue != null) {
+				published.put(channel.key, channel.lastValue);
+			}
+		}
+
+		updateStats(now);
+		published.put("NTBudget/BytesPerSecond", bytesPerSecond);
+		published.put("NTBudget/DroppedPerSecond", droppedPerWindow);
+		publisher.putTable(published);
+	}
+
+	/**
+	 * Resolves the allowlist rule for every key not seen before. Schemas are
+	 * always published.
+	 * @param values the logged values by key
+	 */
+	private void discoverKeys(Map<String, LogValue> values) {
+		for (String key : values.keySet()) {
+			if (channels.containsKey(key)) {
+				continue;
+			}
+			if (key.startsWith(SCHEMA_PREFIX)) {
+				Channel schema = new Channel(key, null);
+				channels.put(key, schema);
+				schemas.add(schema);
+				continue;
+			}
+			Rule match = null;
+			for (Rule rule : rules) {
+				if (rule.pattern.matcher(key).lookingAt()) {
+					match = rule;
+					break;
+				}
+			}
+			Channel channel = new Channel(key, match);
+			channels.put(key, channel);
+			if (match == null) {
+				continue;
+			}
+
+			// Keep allowed keys sorted by priority, in discovery order within one
+			int index = 0;
+			while (index < allowed.size() && allowed.get(index).rule.priority >= match.priority) {
+				index++;
+			}
+			allowed.add(index, channel);
+		}
+	}
+
+	private void updateStats(long now) {
+		if (windowStart < 0) {
+			windowStart = now;
+		}
+		if (now - windowStart < STATS_WINDOW_MICROS) {
+			return;
+		}
+		bytesPerSecond = windowBytes * MICROS_PER_SECOND / (now - windowStart);
+		droppedPerWindow = windowDropped;
+		windowStart = now;
+		windowBytes = 0;
+		windowDropped = 0;
+	}
+
+	/**
+	 * Estimates how many bytes publishing a value sends.
+	 * @param value the value
+	 * @return the estimated size in bytes
+	 */
+	static int estimateBytes(LogValue value) {
+		int payload;
+		switch (value.type) {
+			case Raw:
+				payload = value.getRaw().length;
+				break;
+			case Boolean:
+				payload = 1;
+				break;
+			case Integer:
+				payload = Long.BYTES;
+				break;
+			case Float:
+				payload = Float.BYTES;
+				break;
+			case Double:
+				payload = Double.BYTES;
+				break;
+			case String:
+				payload = value.getString().length();
+				break;
+			case BooleanArray:
+				payload = value.getBooleanArray().length;
+				break;
+			case IntegerArray:
+				payload = value.getIntegerArray().length * Long.BYTES;
+				break;
+			case FloatArray:
+				payload = value.getFloatArray().length * Float.BYTES;
+				break;
+			case DoubleArray:
+				payload = value.getDoubleArray().length * Double.BYTES;
+				break;
+			case StringArray:
+				payload = 0;
+				for (String element : value.getStringArray()) {
+					payload += element.length() + 1;
+				}
+				break;
+			default:
+				payload = 0;
+				break;
+		}
+		return payload + VALUE_OVERHEAD_BYTES;
+	}
+}
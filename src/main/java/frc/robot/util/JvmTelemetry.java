@@ -0,0 +1,194 @@
+package frc.robot.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+import org.littletonrobotics.junction.Logger;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * Reports what the robot code allocates and how long the garbage collector
+ * pauses it.
+ *
+ * Bytes allocated by the main thread are read before and after each stage, so
+ * allocation can be attributed to the system responsible. Garbage collector
+ * notifications are recorded with FPGA timestamps as they arrive, as are loops
+ * that overran their period, so pauses can be lined up with overruns. Everything
+ * is accumulated every loop and only logged when {@link #publish()} is called,
+ * which is meant to run at a low rate.
+ */
+public final class JvmTelemetry {
+	private static final int MAX_EVENTS = 64;
+	private static final long MICROS_PER_MILLI = 1000;
+	private static final double MICROS_PER_SECOND = 1e6;
+	private static final double[] EMPTY = new double[0];
+
+	private final ThreadMXBean threadBean;
+	private final boolean allocationSupported;
+	private final RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
+	private final List<Stage> stages = new ArrayList<>();
+
+	// Garbage collections, written by the notification thread
+	private final Object gcLock = new Object();
+	private final double[] pauseMs = new double[MAX_EVENTS];
+	private final double[] pauseTimestamps = new double[MAX_EVENTS];
+	private int pendingPauses = 0;
+	private long gcCount = 0;
+	private double gcTotalPauseMs = 0.0;
+
+	// Loop overruns, main thread only
+	private final double[] overrunTimestamps = new double[MAX_EVENTS];
+	private int pendingOverruns = 0;
+	private long overrunCount = 0;
+
+	/** Allocation totals for one stage since the last publish. */
+	private static final class Stage {
+		private final String bytesPerRunKey;
+		private long bytes = 0;
+		private long runs = 0;
+
+		private Stage(String name) {
+			bytesPerRunKey = "JVM/Allocation/" + name + "/BytesPerRun";
+		}
+	}
+
+	/**
+	 * Creates a new JvmTelemetry and subscribes to garbage collector
+	 * notifications.
+	 */
+	public JvmTelemetry() {
+		threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		allocationSupported = threadBean.isThreadAllocatedMemorySupported();
+		if (allocationSupported) {
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (collector instanceof NotificationEmitter emitter) {
+				emitter.addNotificationListener((notification, handback) -> {
+					if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+							.equals(notification.getType())) {
+						onGarbageCollection(GarbageCollectionNotificationInfo.from(
+							(CompositeData) notification.getUserData()));
+					}
+				}, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Registers a stage to attribute allocations to.
+	 * @param name the name to log the stage under
+	 * @return the index to pass to {@link #endStage}
+	 */
+	public int addStage(String name) {
+		stages.add(new Stage(name));
+		return stages.size() - 1;
+	}
+
+	/**
+	 * Reads the bytes allocated so far by the calling thread. Call before a stage
+	 * runs and pass the result to {@link #endStage}.
+	 * @return the allocated byte count, or 0 if the JVM cannot measure it
+	 */
+	public long beginStage() {
+		return allocationSupported ? threadBean.getCurrentThreadAllocatedBytes() : 0;
+	}
+
+	/**
+	 * Attributes the bytes allocated since {@link #beginStage} to a stage.
+	 * @param stage the index returned by {@link #addStage}
+	 * @param startBytes the value returned by {@link #beginStage}
+	 */
+	public void endStage(int stage, long startBytes) {
+		if (!allocationSupported) {
+			return;
+		}
+		Stage measured = stages.get(stage);
+		measured.bytes += threadBean.getCurrentThreadAllocatedBytes() - startBytes;
+		measured.runs++;
+	}
+
+	/**
+	 * Records that the robot loop overran its period.
+	 */
+	public void recordOverrun() {
+		overrunCount++;
+		if (pendingOverruns < MAX_EVENTS) {
+			overrunTimestamps[pendingOverruns++] = Logger.getTimestamp() / MICROS_PER_SECOND;
+		}
+	}
+
+	/**
+	 * Logs the allocation, garbage collection and overrun data gathered since
+	 * the last call, then clears it.
+	 */
+	public void publish() {
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			Logger.recordOutput(
+				stage.bytesPerRunKey,
+				stage.runs == 0 ? 0.0 : (double) stage.bytes / stage.runs);
+			stage.bytes = 0;
+			stage.runs = 0;
+		}
+
+		synchronized (gcLock) {
+			Logger.recordOutput("JVM/GC/PauseMs", copyOf(pauseMs, pendingPauses));
+			Logger.recordOutput("JVM/GC/PauseTimestamps", copyOf(pauseTimestamps, pendingPauses));
+			Logger.recordOutput("JVM/GC/Count", gcCount);
+			Logger.recordOutput("JVM/GC/TotalPauseMs", gcTotalPauseMs);
+			pendingPauses = 0;
+		}
+
+		Logger.recordOutput("JVM/Overruns/Timestamps", copyOf(overrunTimestamps, pendingOverruns));
+		Logger.recordOutput("JVM/Overruns/Count", overrunCount);
+		pendingOverruns = 0;
+	}
+
+	/**
+	 * Records a garbage collection. Called from the JMX notification thread.
+	 * @param info the collection that finished
+	 */
+	private void onGarbageCollection(GarbageCollectionNotificationInfo info) {
+		// Concurrent cycles run beside the robot code instead of pausing it
+		if (info.getGcName().contains("Concurrent")) {
+			return;
+		}
+
+		long durationMs = info.getGcInfo().getDuration();
+		// GC times are JVM uptime, shift the start to the FPGA clock
+		long agoMs = runtimeBean.getUptime() - info.getGcInfo().getStartTime();
+		double startSecs =
+			(RobotController.getFPGATime() - agoMs * MICROS_PER_MILLI) / MICROS_PER_SECOND;
+
+		synchronized (gcLock) {
+			gcCount++;
+			gcTotalPauseMs += durationMs;
+			if (pendingPauses < MAX_EVENTS) {
+				pauseMs[pendingPauses] = durationMs;
+				pauseTimestamps[pendingPauses] = startSecs;
+				pendingPauses++;
+			}
+		}
+	}
+
+	private static double[] copyOf(double[] values, int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		double[] copy = new double[count];
+		System.arraycopy(values, 0, copy, 0, count);
+		return copy;
+	}
+}
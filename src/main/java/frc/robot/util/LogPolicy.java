@@ -0,0 +1,225 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * Decides which high-volume log keys are written each loop.
+ *
+ * Keys are matched against prefix patterns, where * matches any run of
+ * characters, and the first matching rule gives the key a verbosity tier and a
+ * decimation rate. The profile chosen at startup decides what each tier keeps:
+ * the MATCH profile writes summaries every loop, detail keys once every
+ * decimation loops and debug keys never, while the DEBUG profile writes
+ * everything every loop. Keys with no matching rule are summaries.
+ *
+ * Systems resolve a {@link Channel} for each key once, then record through it.
+ * Every skipped write adds its estimated encoded size to LogPolicy/BytesSaved.
+ */
+public final class LogPolicy {
+	// Struct sizes as encoded in the log
+	private static final int POSE3D_BYTES = 7 * Double.BYTES;
+	private static final int MODULE_STATE_BYTES = 2 * Double.BYTES;
+
+	/** How much a key is worth keeping. */
+	public enum Tier {
+		/** Always written. */
+		SUMMARY,
+		/** Written at the rule's decimation rate in a match. */
+		DETAIL,
+		/** Only written by the debug profile. */
+		DEBUG
+	}
+
+	/** Which tiers are written. */
+	public enum Profile {
+		/** Summaries every loop, detail decimated, debug dropped. */
+		MATCH,
+		/** Everything every loop. */
+		DEBUG
+	}
+
+	/** A key pattern and the tier and decimation it assigns. */
+	private static final class Rule {
+		private final Pattern pattern;
+		private final Tier tier;
+		private final int decimation;
+
+		private Rule(String keyPattern, Tier keyTier, int every) {
+			this.pattern = compileKeyPattern(keyPattern);
+			this.tier = keyTier;
+			this.decimation = Math.max(1, every);
+		}
+	}
+
+	private static Profile profile = Profile.DEBUG;
+	private static final List<Rule> RULES = new ArrayList<>();
+	private static int channelCount = 0;
+	private static long cycle = 0;
+	private static long bytesSaved = 0;
+
+	private LogPolicy() {
+	}
+
+	/**
+	 * Parses a profile name, ignoring case. Unknown names fall back to MATCH
+	 * with a warning so a typo never turns match logging off.
+	 * @param name the profile name, such as match or DEBUG
+	 * @return the profile
+	 */
+	public static Profile parseProfile(String name) {
+		try {
+			return Profile.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			DriverStation.reportWarning(
+				"Unknown log profile \"" + name + "\", using " + Profile.MATCH, false);
+			return Profile.MATCH;
+		}
+	}
+
+	/**
+	 * Sets the profile. Must be called at startup, before any channel is
+	 * created.
+	 * @param logProfile the profile
+	 */
+	public static void setProfile(Profile logProfile) {
+		checkNotStarted();
+		profile = logProfile;
+	}
+
+	/**
+	 * Returns the profile.
+	 * @return the profile
+	 */
+	public static Profile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Adds a rule. Rules are checked in the order they are added and the first
+	 * match wins. Must be called at startup, before any channel is created.
+	 * @param keyPattern the key prefix to match, where * matches any characters
+	 * @param tier the tier of matching keys
+	 * @param decimation how many loops apart detail keys are written in a match
+	 */
+	public static void addRule(String keyPattern, Tier tier, int decimation) {
+		checkNotStarted();
+		RULES.add(new Rule(keyPattern, tier, decimation));
+	}
+
+	/**
+	 * Resolves the rule for a key. Call once per key, outside the loop.
+	 * @param key the log key
+	 * @return the channel to record the key through
+	 */
+	public static Channel channel(String key) {
+		int period = 1;
+		for (Rule rule : RULES) {
+			if (rule.pattern.matcher(key).lookingAt()) {
+				period = periodFor(rule.tier, rule.decimation);
+				break;
+			}
+		}
+		// Spread decimated channels across loops instead of writing them together
+		int phase = period > 1 ? channelCount % period : 0;
+		channelCount++;
+		return new Channel(key, period, phase);
+	}
+
+	/**
+	 * Advances the loop count and logs the bytes saved so far. Call once per
+	 * robot loop, after every system has logged.
+	 */
+	public static void periodic() {
+		Logger.recordOutput("LogPolicy/BytesSaved", bytesSaved);
+		cycle++;
+	}
+
+	/**
+	 * Compiles a key prefix pattern, where * matches any run of characters.
+	 * Match it against a key with {@code lookingAt()}.
+	 * @param keyPattern the key prefix pattern
+	 * @return the compiled pattern
+	 */
+	static Pattern compileKeyPattern(String keyPattern) {
+		StringBuilder regex = new StringBuilder();
+		String[] parts = keyPattern.split("\\*", -1);
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				regex.append(".*");
+			}
+			regex.append(Pattern.quote(parts[i]));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	private static int periodFor(Tier tier, int decimation) {
+		if (profile == Profile.DEBUG || tier == Tier.SUMMARY) {
+			return 1;
+		}
+		return tier == Tier.DETAIL ? decimation : 0;
+	}
+
+	private static void checkNotStarted() {
+		if (channelCount > 0) {
+			throw new IllegalStateException(
+				"The log policy must be configured before any channel is created");
+		}
+	}
+
+	/**
+	 * A log key with its resolved write rate.
+	 */
+	public static final class Channel {
+		private final String key;
+		private final int period; // 0 means never
+		private final int phase;
+
+		private Channel(String logKey, int every, int offset) {
+			this.key = logKey;
+			this.period = every;
+			this.phase = offset;
+		}
+
+		/**
+		 * Returns whether the key is written this loop. Callers can check this to
+		 * skip building a value that would be dropped.
+		 * @return whether the key is written this loop
+		 */
+		public boolean isDue() {
+			return period == 1 || period > 1 && cycle % period == phase;
+		}
+
+		/**
+		 * Records poses if the key is due this loop.
+		 * @param value the poses
+		 */
+		public void record(Pose3d[] value) {
+			if (isDue()) {
+				Logger.recordOutput(key, value);
+			} else {
+				bytesSaved += (long) value.length * POSE3D_BYTES;
+			}
+		}
+
+		/**
+		 * Records module states if the key is due this loop.
+		 * @param value the module states
+		 */
+		public void record(SwerveModuleState[] value) {
+			if (isDue()) {
+				Logger.recordOutput(key, value);
+			} else {
+				bytesSaved += (long) value.length * MODULE_STATE_BYTES;
+			}
+		}
+	}
+}
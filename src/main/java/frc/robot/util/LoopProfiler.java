@@ -0,0 +1,146 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.littletonrobotics.junction.Logger;
+
+import edu.wpi.first.wpilibj.Alert;
+import edu.wpi.first.wpilibj.Alert.AlertType;
+
+/**
+ * Collects how long each stage of the robot loop takes and reports percentiles.
+ *
+ * Every timing is added to a fixed-bucket histogram for its stage, so recording
+ * is an array increment. Once per reporting window the p50, p95, p99 and max of
+ * each stage are logged under Profiler/stage, the histograms are cleared, and an
+ * alert is raised for every stage whose p99 is over its budget.
+ */
+public final class LoopProfiler {
+	private static final long BUCKET_NANOS = 25_000; // 25 us
+	private static final int BUCKETS = 1000; // Up to 25 ms, slower runs overflow
+	private static final double NANOS_PER_MILLI = 1e6;
+	private static final double NANOS_PER_SECOND = 1e9;
+	private static final double MICROS_PER_SECOND = 1e6;
+	private static final double P50 = 0.50;
+	private static final double P95 = 0.95;
+	private static final double P99 = 0.99;
+
+	private final long windowMicros;
+	private final List<Stage> stages = new ArrayList<>();
+	private long windowStartMicros = -1;
+
+	/** Timing histogram and log keys for one stage. */
+	private static final class Stage {
+		private final int[] counts = new int[BUCKETS + 1]; // Last bucket is overflow
+		private final long budgetNanos;
+		private final Alert alert;
+		private int samples = 0;
+		private long maxNanos = 0;
+
+		private final String p50Key;
+		private final String p95Key;
+		private final String p99Key;
+		private final String maxKey;
+		private final String samplesKey;
+
+		private Stage(String name, long budget) {
+			this.budgetNanos = budget;
+			alert = new Alert(
+				name + " p99 loop time is over its " + budget / NANOS_PER_MILLI + " ms budget",
+				AlertType.kWarning);
+			p50Key = "Profiler/" + name + "/P50Ms";
+			p95Key = "Profiler/" + name + "/P95Ms";
+			p99Key = "Profiler/" + name + "/P99Ms";
+			maxKey = "Profiler/" + name + "/MaxMs";
+			samplesKey = "Profiler/" + name + "/Samples";
+		}
+	}
+
+	/**
+	 * Creates a new LoopProfiler.
+	 * @param windowSecs how often to report percentiles, in seconds
+	 */
+	public LoopProfiler(double windowSecs) {
+		windowMicros = (long) (windowSecs * MICROS_PER_SECOND);
+	}
+
+	/**
+	 * Registers a stage to profile.
+	 * @param name the name to log the stage under
+	 * @param budgetSecs the p99 time above which the stage raises an alert, in
+	 *		seconds
+	 * @return the index to pass to {@link #record}
+	 */
+	public int addStage(String name, double budgetSecs) {
+		stages.add(new Stage(name, (long) (budgetSecs * NANOS_PER_SECOND)));
+		return stages.size() - 1;
+	}
+
+	/**
+	 * Records one run of a stage.
+	 * @param stage the index returned by {@link #addStage}
+	 * @param nanos how long the run took in nanoseconds
+	 */
+	public void record(int stage, long nanos) {
+		Stage profiled = stages.get(stage);
+		int bucket = (int) Math.min(BUCKETS, Math.max(0, nanos) / BUCKET_NANOS);
+		profiled.counts[bucket]++;
+		profiled.samples++;
+		profiled.maxNanos = Math.max(profiled.maxNanos, nanos);
+	}
+
+	/**
+	 * Reports and clears the histograms once the reporting window has passed.
+	 * Call once per robot loop.
+	 */
+	public void periodic() {
+		long now = Logger.getTimestamp();
+		if (windowStartMicros < 0) {
+			windowStartMicros = now;
+		}
+		if (now - windowStartMicros < windowMicros) {
+			return;
+		}
+		windowStartMicros = now;
+
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			if (stage.samples == 0) {
+				continue;
+			}
+
+			long p99 = percentile(stage, P99);
+			Logger.recordOutput(stage.p50Key, percentile(stage, P50) / NANOS_PER_MILLI);
+			Logger.recordOutput(stage.p95Key, percentile(stage, P95) / NANOS_PER_MILLI);
+			Logger.recordOutput(stage.p99Key, p99 / NANOS_PER_MILLI);
+			Logger.recordOutput(stage.maxKey, stage.maxNanos / NANOS_PER_MILLI);
+			Logger.recordOutput(stage.samplesKey, stage.samples);
+			stage.alert.set(p99 > stage.budgetNanos);
+
+			Arrays.fill(stage.counts, 0);
+			stage.samples = 0;
+			stage.maxNanos = 0;
+		}
+	}
+
+	/**
+	 * Estimates a percentile from a stage's histogram.
+	 * @param stage the stage
+	 * @param fraction the percentile as a fraction, such as 0.99
+	 * @return the upper edge of the bucket holding the percentile, or the
+	 *		maximum if it falls in the overflow bucket, in nanoseconds
+	 */
+	private static long percentile(Stage stage, double fraction) {
+		long target = (long) Math.ceil(fraction * stage.samples);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += stage.counts[bucket];
+			if (seen >= target) {
+				return Math.min((bucket + 1) * BUCKET_NANOS, stage.maxNanos);
+			}
+		}
+		return stage.maxNanos;
+	}
+}
@@ -0,0 +1,255 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ctre.phoenix6.swerve.SwerveDrivetrain.SwerveDriveState;
+
+/**
+ * Bounded lock-free ring of drivetrain odometry samples, written by the odometry
+ * thread and drained by the main loop.
+ *
+ * Samples are copied field by field into preallocated primitive slots, so adding
+ * a sample costs a few array writes on the odometry thread. Draining copies every
+ * waiting sample into a batch of exact-length arrays. Batches are cached by size
+ * in two sets that consecutive drains alternate between, so after the first few
+ * cycles draining does not allocate either, and a batch stays untouched until
+ * the drain after next. That is long enough for the logger, which keeps arrays
+ * by reference but encodes them before the next cycle.
+ */
+public final class OdometrySampleBuffer {
+	private static final int TIMESTAMP = 0;
+	private static final int X = 1;
+	private static final int Y = 2;
+	private static final int THETA = 3;
+	private static final int VX = 4;
+	private static final int VY = 5;
+	private static final int OMEGA = 6;
+	private static final int MODULE_SPEEDS = 7;
+	private static final int MODULE_ANGLES = 8;
+	private static final int FIELDS = 9;
+
+	private final int capacity;
+	private final int mask;
+	private final int moduleCount;
+	private final AtomicLong head = new AtomicLong(); // Next slot to read
+	private final AtomicLong tail = new AtomicLong(); // Next slot to write
+	private final AtomicLong dropped = new AtomicLong();
+
+	// Slot contents, only written by the producer
+	private final double[] timestamps;
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] thetas;
+	private final double[] vxs;
+	private final double[] vys;
+	private final double[] omegas;
+	private final double[] moduleSpeeds;
+	private final double[] moduleAngles;
+
+	// Consumer-only batches, indexed by set, sample count then field
+	private final double[][][][] batches;
+	private double[][] batch;
+	private int batchSize = 0;
+	private int batchSet = 0;
+
+	/**
+	 * Creates a new OdometrySampleBuffer.
+	 * @param minCapacity the minimum number of samples the buffer can hold,
+	 *		rounded up to a power of two
+	 * @param modules the number of swerve modules in each sample
+	 */
+	public OdometrySampleBuffer(int minCapacity, int modules) {
+		capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+		mask = capacity - 1;
+		moduleCount = modules;
+
+		timestamps = new double[capacity];
+		xs = new double[capacity];
+		ys = new double[capacity];
+		thetas = new double[capacity];
+		vxs = new double[capacity];
+		vys = new double[capacity];
+		omegas = new double[capacity];
+		moduleSpeeds = new double[capacity * modules];
+		moduleAngles = new double[capacity * modules];
+
+		batches = new double[2][capacity + 1][][];
+		batch = batchOfSize(0);
+	}
+
+	/**
+	 * Copies a drivetrain state into the buffer. Must only be called from the
+	 * odometry thread, or from the robot loop in lockstep simulation.
+	 * @param state the latest drivetrain state
+	 * @param fpgaTimestamp the FPGA time of the state in seconds, since Phoenix
+	 *		timestamps its states in its own time base
+	 * @return true if the sample was added, false if the buffer was full
+	 */
+	public boolean offer(SwerveDriveState state, double fpgaTimestamp) {
+		long currentTail = tail.get();
+		if (currentTail - head.get() >= capacity) {
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int slot = (int) (currentTail & mask);
+		timestamps[slot] = fpgaTimestamp;
+		xs[slot] = state.Pose.getX();
+		ys[slot] = state.Pose.getY();
+		thetas[slot] = state.Pose.getRotation().getRadians();
+		vxs[slot] = state.Speeds.vxMetersPerSecond;
+		vys[slot] = state.Speeds.vyMetersPerSecond;
+		omegas[slot] = state.Speeds.omegaRadiansPerSecond;
+		int moduleBase = slot * moduleCount;
+		for (int m = 0; m < moduleCount; m++) {
+			moduleSpeeds[moduleBase + m] = state.ModuleStates[m].speedMetersPerSecond;
+			moduleAngles[moduleBase + m] = state.ModuleStates[m].angle.getRadians();
+		}
+		// Publish the slot to the consumer
+		tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	/**
+	 * Moves every waiting sample into the current batch. The arrays of the
+	 * previous batch are not reused by this drain, only by the one after it.
+	 * Must only be called from the consumer thread.
+	 * @return the number of samples drained
+	 */
+	public int drain() {
+		long start = head.get();
+		int count = (int) (tail.get() - start);
+		batchSet ^= 1;
+		batch = batchOfSize(count);
+		batchSize = count;
+
+		for (int i = 0; i < count; i++) {
+			int slot = (int) ((start + i) & mask);
+			batch[TIMESTAMP][i] = timestamps[slot];
+			batch[X][i] = xs[slot];
+			batch[Y][i] = ys[slot];
+			batch[THETA][i] = thetas[slot];
+			batch[VX][i] = vxs[slot];
+			batch[VY][i] = vys[slot];
+			batch[OMEGA][i] = omegas[slot];
+			System.arraycopy(
+				moduleSpeeds, slot * moduleCount,
+				batch[MODULE_SPEEDS], i * moduleCount,
+				moduleCount);
+			System.arraycopy(
+				moduleAngles, slot * moduleCount,
+				batch[MODULE_ANGLES], i * moduleCount,
+				moduleCount);
+		}
+
+		// Hand the slots back to the producer
+		head.lazySet(start + count);
+		return count;
+	}
+
+	/**
+	 * Returns the number of samples in the current batch.
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Returns the FPGA timestamps of the current batch in seconds, oldest first.
+	 * @return the sample timestamps
+	 */
+	public double[] getTimestamps() {
+		return batch[TIMESTAMP];
+	}
+
+	/**
+	 * Returns the robot X positions of the current batch in meters.
+	 * @return the X positions
+	 */
+	public double[] getXs() {
+		return batch[X];
+	}
+
+	/**
+	 * Returns the robot Y positions of the current batch in meters.
+	 * @return the Y positions
+	 */
+	public double[] getYs() {
+		return batch[Y];
+	}
+
+	/**
+	 * Returns the robot headings of the current batch in radians.
+	 * @return the headings
+	 */
+	public double[] getThetas() {
+		return batch[THETA];
+	}
+
+	/**
+	 * Returns the robot-relative X velocities of the current batch in meters per
+	 * second.
+	 * @return the X velocities
+	 */
+	public double[] getVxs() {
+		return batch[VX];
+	}
+
+	/**
+	 * Returns the robot-relative Y velocities of the current batch in meters per
+	 * second.
+	 * @return the Y velocities
+	 */
+	public double[] getVys() {
+		return batch[VY];
+	}
+
+	/**
+	 * Returns the angular velocities of the current batch in radians per second.
+	 * @return the angular velocities
+	 */
+	public double[] getOmegas() {
+		return batch[OMEGA];
+	}
+
+	/**
+	 * Returns the measured module speeds of the current batch in meters per
+	 * second, with every module of one sample stored together.
+	 * @return the module speeds
+	 */
+	public double[] getModuleSpeeds() {
+		return batch[MODULE_SPEEDS];
+	}
+
+	/**
+	 * Returns the measured module angles of the current batch in radians, with
+	 * every module of one sample stored together.
+	 * @return the module angles
+	 */
+	public double[] getModuleAngles() {
+		return batch[MODULE_ANGLES];
+	}
+
+	/**
+	 * Returns the number of samples dropped because the buffer was full.
+	 * @return the number of dropped samples
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	private double[][] batchOfSize(int count) {
+		double[][][] set = batches[batchSet];
+		if (set[count] == null) {
+			double[][] arrays = new double[FIELDS][];
+			for (int field = 0; field < MODULE_SPEEDS; field++) {
+				arrays[field] = new double[count];
+			}
+			arrays[MODULE_SPEEDS] = new double[count * moduleCount];
+			arrays[MODULE_ANGLES] = new double[count * moduleCount];
+			set[count] = arrays;
+		}
+		return set[count];
+	}
+}
@@ -0,0 +1,174 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed-capacity history of timestamped robot poses that can be queried at any
+ * past time.
+ *
+ * Poses are stored oldest first in a ring of primitive arrays. A query binary
+ * searches the ring for the two samples around the requested time and linearly
+ * interpolates between them, writing the result into a caller-provided array, so
+ * neither adding nor querying allocates. Samples must be added in timestamp
+ * order, and the history is only meant to be used from one thread.
+ */
+public final class PoseHistory {
+	private static final int POSE_VALUES = 3;
+
+	private final int capacity;
+	private final double[] timestamps;
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] thetas;
+	private int start = 0; // Index of the oldest sample
+	private int size = 0;
+
+	/**
+	 * Creates a new PoseHistory.
+	 * @param samples the number of samples to keep before the oldest is
+	 *		overwritten
+	 */
+	public PoseHistory(int samples) {
+		capacity = samples;
+		timestamps = new double[samples];
+		xs = new double[samples];
+		ys = new double[samples];
+		thetas = new double[samples];
+	}
+
+	/**
+	 * Adds a sample, overwriting the oldest sample if the history is full.
+	 * Samples that are not newer than the latest sample are ignored.
+	 * @param timestamp the sample timestamp in seconds
+	 * @param x the robot X position in meters
+	 * @param y the robot Y position in meters
+	 * @param theta the robot heading in radians
+	 */
+	public void add(double timestamp, double x, double y, double theta) {
+		if (size > 0 && timestamp <= timestamps[physical(size - 1)]) {
+			return;
+		}
+
+		int index;
+		if (size < capacity) {
+			index = physical(size);
+			size++;
+		} else {
+			index = start;
+			start = (start + 1) % capacity;
+		}
+		timestamps[index] = timestamp;
+		xs[index] = x;
+		ys[index] = y;
+		thetas[index] = theta;
+	}
+
+	/**
+	 * Adds a batch of samples held in parallel arrays, oldest first.
+	 * @param sampleTimestamps the sample timestamps in seconds
+	 * @param sampleXs the robot X positions in meters
+	 * @param sampleYs the robot Y positions in meters
+	 * @param sampleThetas the robot headings in radians
+	 */
+	public void addAll(
+			double[] sampleTimestamps,
+			double[] sampleXs,
+			double[] sampleYs,
+			double[] sampleThetas) {
+		for (int i = 0; i < sampleTimestamps.length; i++) {
+			add(sampleTimestamps[i], sampleXs[i], sampleYs[i], sampleThetas[i]);
+		}
+	}
+
+	/**
+	 * Finds the robot pose at a past time. Times before the oldest sample or
+	 * after the newest sample are clamped to that sample.
+	 * @param timestamp the time to look up in seconds
+	 * @param out array of at least three elements to receive x, y and heading in
+	 *		meters and radians
+	 * @return true if the history had any samples, false if out was not written
+	 */
+	public boolean poseAt(double timestamp, double[] out) {
+		if (out.length < POSE_VALUES) {
+			throw new IllegalArgumentException("Output array must hold x, y and heading");
+		}
+		if (size == 0) {
+			return false;
+		}
+
+		if (timestamp <= timestamps[start]) {
+			write(start, out);
+			return true;
+		}
+		int newest = physical(size - 1);
+		if (timestamp >= timestamps[newest]) {
+			write(newest, out);
+			return true;
+		}
+
+		// Find the first sample at or after the timestamp
+		int low = 1;
+		int high = size - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (timestamps[physical(mid)] < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		int after = physical(low);
+		int before = physical(low - 1);
+		double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+		out[0] = xs[before] + (xs[after] - xs[before]) * t;
+		out[1] = ys[before] + (ys[after] - ys[before]) * t;
+		// Interpolate the heading the short way around the circle
+		out[2] = MathUtil.angleModulus(
+			thetas[before] + MathUtil.angleModulus(thetas[after] - thetas[before]) * t);
+		return true;
+	}
+
+	/**
+	 * Returns the number of samples in the history.
+	 * @return the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the timestamp of the oldest sample.
+	 * @return the oldest timestamp in seconds, or NaN if the history is empty
+	 */
+	public double getOldestTimestamp() {
+		return size == 0 ? Double.NaN : timestamps[start];
+	}
+
+	/**
+	 * Returns the timestamp of the newest sample.
+	 * @return the newest timestamp in seconds, or NaN if the history is empty
+	 */
+	public double getNewestTimestamp() {
+		return size == 0 ? Double.NaN : timestamps[physical(size - 1)];
+	}
+
+	/**
+	 * Removes every sample.
+	 */
+	public void clear() {
+		start = 0;
+		size = 0;
+	}
+
+	private int physical(int logicalIndex) {
+		int index = start + logicalIndex;
+		return index >= capacity ? index - capacity : index;
+	}
+
+	private void write(int index, double[] out) {
+		out[0] = xs[index];
+		out[1] = ys[index];
+		out[2] = thetas[index];
+	}
+}
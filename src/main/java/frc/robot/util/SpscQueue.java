@@ -0,0 +1,78 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for handing objects from exactly one producer thread
+ * to exactly one consumer thread. When the queue is full, new elements are
+ * dropped and counted rather than blocking the producer.
+ * @param <T> the type of element
+ */
+public final class SpscQueue<T> {
+	private final Object[] buffer;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(); // Next slot to read
+	private final AtomicLong tail = new AtomicLong(); // Next slot to write
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Creates a new SpscQueue.
+	 * @param capacity the minimum number of elements the queue can hold, rounded
+	 *		up to a power of two
+	 */
+	public SpscQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		buffer = new Object[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds an element to the queue. Must only be called from the producer thread.
+	 * @param element the element to add
+	 * @return true if the element was added, false if the queue was full
+	 */
+	public boolean offer(T element) {
+		long currentTail = tail.get();
+		if (currentTail - head.get() >= buffer.length) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		buffer[(int) (currentTail & mask)] = element;
+		tail.lazySet(currentTail + 1);
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element from the queue. Must only be called from the
+	 * consumer thread.
+	 * @return the oldest element, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		long currentHead = head.get();
+		if (currentHead == tail.get()) {
+			return null;
+		}
+		int index = (int) (currentHead & mask);
+		T element = (T) buffer[index];
+		buffer[index] = null;
+		head.lazySet(currentHead + 1);
+		return element;
+	}
+
+	/**
+	 * Returns the number of elements currently in the queue.
+	 * @return the queue depth
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	/**
+	 * Returns the number of elements dropped because the queue was full.
+	 * @return the number of dropped elements
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,105 @@
+package frc.robot.util;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Dense AprilTag lookup table built once from {@link VisionConstants#TAG_LAYOUT}.
+ *
+ * Tag poses are stored in arrays indexed by fiducial ID, so a lookup is a bounds
+ * check and an array read instead of a search through the layout that returns
+ * an Optional.
+ */
+public final class TagTable {
+	/** The layout this table was built from. */
+	public static final AprilTagFieldLayout LAYOUT = VisionConstants.TAG_LAYOUT;
+
+	/** Field length in meters. */
+	public static final double FIELD_LENGTH = LAYOUT.getFieldLength();
+	/** Field width in meters. */
+	public static final double FIELD_WIDTH = LAYOUT.getFieldWidth();
+
+	/** The largest fiducial ID in the layout. */
+	public static final int MAX_ID;
+	/** The number of tags in the layout. */
+	public static final int TAG_COUNT;
+
+	private static final Pose3d[] POSES_3D;
+	private static final Pose2d[] POSES_2D;
+	private static final int[] IDS;
+
+	static {
+		var tags = LAYOUT.getTags();
+		int maxId = 0;
+		for (AprilTag tag : tags) {
+			maxId = Math.max(maxId, tag.ID);
+		}
+
+		MAX_ID = maxId;
+		TAG_COUNT = tags.size();
+		POSES_3D = new Pose3d[maxId + 1];
+		POSES_2D = new Pose2d[maxId + 1];
+		IDS = new int[tags.size()];
+
+		int i = 0;
+		for (AprilTag tag : tags) {
+			// Read through the layout so any origin transform is applied
+			Pose3d pose = LAYOUT.getTagPose(tag.ID).orElse(tag.pose);
+			POSES_3D[tag.ID] = pose;
+			POSES_2D[tag.ID] = pose.toPose2d();
+			IDS[i++] = tag.ID;
+		}
+	}
+
+	private TagTable() {
+	}
+
+	/**
+	 * Returns whether a tag with the given ID is on the field.
+	 * @param id the fiducial ID
+	 * @return true if the tag is in the layout
+	 */
+	public static boolean contains(int id) {
+		return id >= 0 && id <= MAX_ID && POSES_3D[id] != null;
+	}
+
+	/**
+	 * Returns the field pose of a tag.
+	 * @param id the fiducial ID
+	 * @return the tag pose, or null if the tag is not in the layout
+	 */
+	public static Pose3d getPose3d(int id) {
+		return id >= 0 && id <= MAX_ID ? POSES_3D[id] : null;
+	}
+
+	/**
+	 * Returns the field pose of a tag projected onto the floor.
+	 * @param id the fiducial ID
+	 * @return the 2D tag pose, or null if the tag is not in the layout
+	 */
+	public static Pose2d getPose2d(int id) {
+		return id >= 0 && id <= MAX_ID ? POSES_2D[id] : null;
+	}
+
+	/**
+	 * Returns the fiducial ID of the tag at an index in the layout.
+	 * @param index an index from 0 to {@link #TAG_COUNT} - 1
+	 * @return the fiducial ID
+	 */
+	public static int getId(int index) {
+		return IDS[index];
+	}
+
+	/**
+	 * Returns whether a point is inside the field boundary.
+	 * @param x the X coordinate in meters
+	 * @param y the Y coordinate in meters
+	 * @return true if the point is on the field
+	 */
+	public static boolean isOnField(double x, double y) {
+		return x >= 0.0 && x <= FIELD_LENGTH && y >= 0.0 && y <= FIELD_WIDTH;
+	}
+}
@@ -0,0 +1,189 @@
+package frc.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of vision measurements. Any number of threads may add
+ * measurements, and a single consumer thread drains them in timestamp order.
+ *
+ * Measurements are stored in primitive slots, so neither adding nor draining
+ * allocates. Each slot carries a sequence number that tells producers and the
+ * consumer whose turn it is to use the slot.
+ */
+public final class VisionMeasurementQueue {
+	/** Receives drained measurements. */
+	@FunctionalInterface
+	public interface MeasurementSink {
+		/**
+		 * Accepts a vision measurement.
+		 * @param x the robot X position in meters
+		 * @param y the robot Y position in meters
+		 * @param theta the robot heading in radians
+		 * @param timestampSeconds the FPGA timestamp of the measurement
+		 * @param xStdDev the X standard deviation in meters
+		 * @param yStdDev the Y standard deviation in meters
+		 * @param thetaStdDev the heading standard deviation in radians
+		 */
+		void accept(
+				double x,
+				double y,
+				double theta,
+				double timestampSeconds,
+				double xStdDev,
+				double yStdDev,
+				double thetaStdDev);
+	}
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong(); // Next slot for producers
+	private final AtomicLong head = new AtomicLong(); // Next slot for the consumer
+	private final AtomicLong dropped = new AtomicLong();
+
+	// Slot contents, written by the producer that claimed the slot
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] thetas;
+	private final double[] timestamps;
+	private final double[] xStdDevs;
+	private final double[] yStdDevs;
+	private final double[] thetaStdDevs;
+
+	// Consumer-only scratch used to sort a drained batch
+	private final int[] order;
+
+	/**
+	 * Creates a new VisionMeasurementQueue.
+	 * @param minCapacity the minimum number of measurements the queue can hold,
+	 *		rounded up to a power of two
+	 */
+	public VisionMeasurementQueue(int minCapacity) {
+		capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+		mask = capacity - 1;
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+
+		xs = new double[capacity];
+		ys = new double[capacity];
+		thetas = new double[capacity];
+		timestamps = new double[capacity];
+		xStdDevs = new double[capacity];
+		yStdDevs = new double[capacity];
+		thetaStdDevs = new double[capacity];
+		order = new int[capacity];
+	}
+
+	/**
+	 * Adds a measurement to the queue. Safe to call from any thread.
+	 * @param x the robot X position in meters
+	 * @param y the robot Y position in meters
+	 * @param theta the robot heading in radians
+	 * @param timestampSeconds the FPGA timestamp of the measurement
+	 * @param xStdDev the X standard deviation in meters
+	 * @param yStdDev the Y standard deviation in meters
+	 * @param thetaStdDev the heading standard deviation in radians
+	 * @return true if the measurement was added, false if the queue was full
+	 */
+	public boolean offer(
+			double x,
+			double y,
+			double theta,
+			double timestampSeconds,
+			double xStdDev,
+			double yStdDev,
+			double thetaStdDev) {
+		long position;
+		while (true) {
+			position = tail.get();
+			long sequence = sequences.get((int) (position & mask));
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if (sequence < position) {
+				// The consumer has not freed this slot yet, so the queue is full
+				dropped.incrementAndGet();
+				return false;
+			}
+			// Otherwise another producer claimed the slot first, so try again
+		}
+
+		int slot = (int) (position & mask);
+		xs[slot] = x;
+		ys[slot] = y;
+		thetas[slot] = theta;
+		timestamps[slot] = timestampSeconds;
+		xStdDevs[slot] = xStdDev;
+		yStdDevs[slot] = yStdDev;
+		thetaStdDevs[slot] = thetaStdDev;
+		// Publish the slot to the consumer
+		sequences.set(slot, position + 1);
+		return true;
+	}
+
+	/**
+	 * Removes every measurement currently in the queue and passes them to a sink,
+	 * oldest timestamp first. Must only be called from the consumer thread.
+	 * @param sink the sink to pass measurements to
+	 * @return the number of measurements drained
+	 */
+	public int drain(MeasurementSink sink) {
+		long start = head.get();
+		int count = 0;
+		while (count < capacity) {
+			int slot = (int) ((start + count) & mask);
+			if (sequences.get(slot) != start + count + 1) {
+				break;
+			}
+
+			// Insertion sort by timestamp, batches are only a few measurements long
+			int j = count - 1;
+			while (j >= 0 && timestamps[order[j]] > timestamps[slot]) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = slot;
+			count++;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int slot = order[i];
+			sink.accept(
+				xs[slot],
+				ys[slot],
+				thetas[slot],
+				timestamps[slot],
+				xStdDevs[slot],
+				yStdDevs[slot],
+				thetaStdDevs[slot]);
+		}
+
+		// Hand the slots back to producers
+		for (int i = 0; i < count; i++) {
+			long position = start + i;
+			sequences.set((int) (position & mask), position + capacity);
+		}
+		head.set(start + count);
+		return count;
+	}
+
+	/**
+	 * Returns the number of measurements waiting to be drained.
+	 * @return the queue depth
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+
+	/**
+	 * Returns the number of measurements dropped because the queue was full.
+	 * @return the number of dropped measurements
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,93 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs one scenario twice in lockstep and checks that both runs log exactly the
+ * same poses.
+ */
+class LockstepDeterminismTest {
+	private static final long TIMEOUT_SECS = 120;
+	private static final String[] POSE_KEYS = {
+		"RealOutputs/Swerve/Drivetrain Pose",
+		"RealOutputs/Swerve/Odometry/Timestamps",
+		"RealOutputs/Swerve/Odometry/X",
+		"RealOutputs/Swerve/Odometry/Y",
+		"RealOutputs/Swerve/Odometry/Theta"
+	};
+	private static final String SCENARIO = String.join(System.lineSeparator(),
+		"name = determinism",
+		"seed = 7",
+		"durationSecs = 4",
+		"startX = 2.0",
+		"startY = 4.0",
+		"startHeadingDeg = 30",
+		"inputs = 0: 0, -0.5, 0.3; 1.5: -0.4, 0.2, -0.5; 3: 0, 0, 0");
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void sameScenarioLogsIdenticalPoses() throws Exception {
+		Path scenario = tempDir.resolve("determinism.properties");
+		Files.writeString(scenario, SCENARIO);
+
+		Path first = runScenario(scenario, tempDir.resolve("first"));
+		Path second = runScenario(scenario, tempDir.resolve("second"));
+
+		try (WpilogIndex a = WpilogIndex.open(first); WpilogIndex b = WpilogIndex.open(second)) {
+			for (String key : POSE_KEYS) {
+				List<String> records = records(a, key);
+				assertFalse(records.isEmpty(), "First run logged no " + key);
+				assertEquals(records, records(b, key), "Runs logged different " + key);
+			}
+		}
+	}
+
+	private static Path runScenario(Path scenario, Path runDir) throws Exception {
+		Files.createDirectories(runDir);
+		Process process = RobotProcess.start(
+			Map.of(
+				"frc.sim.scenario", scenario.toString(),
+				"frc.sim.output", runDir.toString()),
+			runDir.resolve("console.log"));
+		assertTrue(process.waitFor(TIMEOUT_SECS, TimeUnit.SECONDS), "Scenario timed out");
+		assertEquals(0, process.exitValue(), "Scenario failed, see " + runDir);
+
+		try (Stream<Path> files = Files.list(runDir)) {
+			return files
+				.filter(file -> file.toString().endsWith(".wpilog"))
+				.findFirst()
+				.orElseThrow(() -> new IOException("No log written to " + runDir));
+		}
+	}
+
+	/**
+	 * Reads every record of a key as its timestamp and payload bytes.
+	 */
+	private static List<String> records(WpilogIndex index, String key) throws IOException {
+		List<String> records = new ArrayList<>();
+		index.forEachRecord(key, (timestamp, payload) -> {
+			ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+			copy.put(payload.duplicate());
+			records.add(timestamp + ":" + HexFormat.of().formatHex(copy.array()));
+		});
+		return records;
+	}
+}
@@ -0,0 +1,87 @@
+package frc.robot.systems;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.littletonrobotics.junction.Logger;
+
+import com.sun.management.ThreadMXBean;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.systems.VisionIO.PoseObservation;
+import frc.robot.systems.VisionIO.PoseObservationType;
+
+/**
+ * Checks that Vision.periodic does not allocate once its buffers have grown to
+ * the steady-state observation count, including what it logs.
+ */
+class VisionAllocationTest {
+	private static final int OBSERVATIONS_PER_CAMERA = 5;
+	private static final int[] TAG_IDS = {17, 18, 19};
+	private static final int WARMUP_CYCLES = 20_000;
+	private static final int MEASURED_CYCLES = 10_000;
+	// Slack for allocations outside Vision, such as JIT or TLAB bookkeeping
+	private static final long ALLOWED_BYTES = 1024;
+
+	@BeforeAll
+	static void startLogger() {
+		assertTrue(HAL.initialize(500, 0));
+		// recordOutput does nothing until the logger starts, so start one that discards
+		Logger.addDataReceiver(table -> { });
+		Logger.start();
+	}
+
+	@AfterAll
+	static void stopLogger() {
+		Logger.end();
+	}
+
+	@Test
+	void periodicDoesNotAllocate() {
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		PoseObservation[] observations = new PoseObservation[OBSERVATIONS_PER_CAMERA];
+		for (int i = 0; i < observations.length; i++) {
+			observations[i] = new PoseObservation(
+				i * 0.02,
+				new Pose3d(3.0 + 0.1 * i, 4.0, 0.0, new Rotation3d(0.0, 0.0, 0.1 * i)),
+				0.05,
+				1 + i % 3,
+				2.0,
+				PoseObservationType.PHOTONVISION);
+		}
+		VisionIO io = new VisionIO() {
+			@Override
+			public void updateInputs(VisionIOInputs inputs) {
+				inputs.connected = true;
+				inputs.poseObservations = observations;
+				inputs.tagIds = TAG_IDS;
+			}
+		};
+		Vision vision = new Vision((x, y, theta, timestamp, xStdDev, yStdDev, thetaStdDev) -> { },
+			io, io);
+
+		for (int i = 0; i < WARMUP_CYCLES; i++) {
+			vision.periodic();
+		}
+
+		long start = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < MEASURED_CYCLES; i++) {
+			vision.periodic();
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - start;
+
+		assertTrue(allocated <= ALLOWED_BYTES,
+			"Vision.periodic allocated " + allocated + " bytes over "
+				+ MEASURED_CYCLES + " cycles");
+	}
+}
@@ -0,0 +1,91 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+
+/**
+ * Measures what a BudgetedNT4Publisher sends to a stand-in NetworkTables client
+ * that, like NT4Publisher, only sends values that changed since the last table.
+ */
+class BudgetedNT4PublisherTest {
+	private static final double BUDGET_BYTES_PER_SEC = 20_000;
+	private static final long LOOP_MICROS = 20_000;
+	private static final int LOOPS = 500; // 10 s at 50 Hz
+	private static final double RUN_SECS = LOOPS * LOOP_MICROS / 1e6;
+	private static final int LOW_PRIORITY_KEYS = 20;
+	private static final String SCHEMA_KEY = ".schema/struct:Test";
+	private static final byte[] SCHEMA = {1, 2, 3};
+
+	/** Counts what an NT client would receive from each table. */
+	private static final class StandInClient implements LogDataReceiver {
+		private Map<String, LogValue> last = new HashMap<>();
+		private final Map<String, Integer> sends = new HashMap<>();
+		private long budgetedBytes = 0;
+
+		@Override
+		public void putTable(LogTable table) {
+			Map<String, LogValue> values = table.getAll(true);
+			for (Map.Entry<String, LogValue> entry : values.entrySet()) {
+				String key = entry.getKey();
+				if (entry.getValue().equals(last.get(key))) {
+					continue;
+				}
+				sends.merge(key, 1, Integer::sum);
+				if (!key.startsWith(".schema/") && !key.startsWith("NTBudget/")) {
+					budgetedBytes += BudgetedNT4Publisher.estimateBytes(entry.getValue());
+				}
+			}
+			last = values;
+		}
+
+		private int sendsOf(String key) {
+			return sends.getOrDefault(key, 0);
+		}
+	}
+
+	@Test
+	void staysWithinBudgetAndDropsLowPriorityFirst() throws InterruptedException {
+		StandInClient client = new StandInClient();
+		BudgetedNT4Publisher publisher = new BudgetedNT4Publisher(BUDGET_BYTES_PER_SEC, client)
+			.allow("RealOutputs/High", 2, 50)
+			.allow("RealOutputs/Low/", 0, 50);
+
+		for (int loop = 0; loop < LOOPS; loop++) {
+			LogTable table = new LogTable(loop * LOOP_MICROS);
+			table.put(SCHEMA_KEY, SCHEMA);
+			table.put("RealOutputs/High", filled(10, loop));
+			table.put("RealOutputs/Ignored", filled(10, loop));
+			for (int key = 0; key < LOW_PRIORITY_KEYS; key++) {
+				table.put("RealOutputs/Low/" + key, filled(50, loop));
+			}
+			publisher.putTable(table);
+		}
+
+		double bytesPerSecond = client.budgetedBytes / RUN_SECS;
+		assertTrue(bytesPerSecond <= BUDGET_BYTES_PER_SEC,
+			"Published " + bytesPerSecond + " B/s over a " + BUDGET_BYTES_PER_SEC + " B/s budget");
+		assertTrue(bytesPerSecond >= 0.8 * BUDGET_BYTES_PER_SEC,
+			"Published only " + bytesPerSecond + " B/s of a " + BUDGET_BYTES_PER_SEC
+				+ " B/s budget");
+
+		// The first loop has no budget yet, after that the high priority key always fits
+		assertEquals(LOOPS - 1, client.sendsOf("RealOutputs/High"));
+		assertEquals(0, client.sendsOf("RealOutputs/Ignored"));
+		assertEquals(1, client.sendsOf(SCHEMA_KEY));
+	}
+
+	private static double[] filled(int length, double value) {
+		double[] values = new double[length];
+		Arrays.fill(values, value);
+		return values;
+	}
+}